@@ -0,0 +1,311 @@
+package uk.co.notnull.pvp;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Audit stream of PvP decisions, written to size and time rotated gzip files
+ * Producers write fixed-size records into a lock-free bounded ring buffer, which a background thread drains.
+ * If the buffer is full the record is dropped and counted, so producers never block.
+ */
+public final class AuditLog {
+	private static final DateTimeFormatter FILE_NAME_FORMAT =
+			DateTimeFormatter.ofPattern("yyyy-MM-dd-HH-mm-ss").withZone(ZoneOffset.UTC);
+
+	public enum Type {
+		TOGGLE,
+		ALLOWED,
+		CANCELLED,
+		TAG,
+		PUNISH
+	}
+
+	/**
+	 * Reasons recorded alongside {@link Type#CANCELLED} records, and new states alongside {@link Type#TOGGLE} records
+	 */
+	public static final int REASON_NONE = 0;
+	public static final int REASON_ATTACKER_OFFLINE = 1;
+	public static final int REASON_ZONE = 2;
+	public static final int REASON_ATTACKER_DISABLED = 3;
+	public static final int REASON_VICTIM_DISABLED = 4;
+	public static final int REASON_PARTY = 5;
+	public static final int STATE_DISABLED = 0;
+	public static final int STATE_ENABLED = 1;
+
+	private static final Type[] TYPES = Type.values();
+	private static final UUID NO_PLAYER = new UUID(0, 0);
+
+	private final Path folder;
+	private final Logger logger;
+	private final long maxFileSize;
+	private final long rotateIntervalMillis;
+
+	//Ring buffer, with one sequence number per slot indicating whether it is free or ready to read
+	private final int mask;
+	private final AtomicLongArray sequences;
+	private final AtomicLong tail = new AtomicLong();
+	private long head = 0;
+	private final byte[] types;
+	private final long[] times;
+	private final long[] players;
+	private final int[] values;
+	private final LongAdder dropped = new LongAdder();
+
+	private final ScheduledExecutorService writer;
+	private Writer output;
+	private CountingOutputStream fileOutput;
+	private long fileOpenedAt;
+
+	public AuditLog(Path folder, int capacity, long maxFileSize, long rotateIntervalMillis, Logger logger) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+		this.folder = folder;
+		this.logger = logger;
+		this.maxFileSize = maxFileSize;
+		this.rotateIntervalMillis = rotateIntervalMillis;
+		this.mask = size - 1;
+		this.sequences = new AtomicLongArray(size);
+		this.types = new byte[size];
+		this.times = new long[size];
+		this.players = new long[size * 4];
+		this.values = new int[size];
+
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+
+		this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "PvP Audit Writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public void start() throws IOException {
+		Files.createDirectories(folder);
+		writer.scheduleWithFixedDelay(this::drain, 1, 1, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Adds a record to the audit stream, without blocking
+	 * @param type The record type
+	 * @param player The player performing the action
+	 * @param other The other player involved, if any
+	 * @param value The reason or state associated with the record
+	 * @return Whether the record was added, false if the buffer was full
+	 */
+	public boolean record(Type type, UUID player, @Nullable UUID other, int value) {
+		long position = tail.get();
+
+		while(true) {
+			int index = (int) (position & mask);
+			long difference = sequences.get(index) - position;
+
+			if(difference == 0) {
+				if(tail.compareAndSet(position, position + 1)) {
+					break;
+				}
+
+				position = tail.get();
+			} else if(difference < 0) {
+				//Slot has not been consumed since the last lap, so the buffer is full
+				dropped.increment();
+				return false;
+			} else {
+				position = tail.get();
+			}
+		}
+
+		int index = (int) (position & mask);
+		UUID otherPlayer = other != null ? other : NO_PLAYER;
+
+		types[index] = (byte) type.ordinal();
+		times[index] = System.currentTimeMillis();
+		players[index * 4] = player.getMostSignificantBits();
+		players[index * 4 + 1] = player.getLeastSignificantBits();
+		players[index * 4 + 2] = otherPlayer.getMostSignificantBits();
+		players[index * 4 + 3] = otherPlayer.getLeastSignificantBits();
+		values[index] = value;
+
+		//Publish the slot to the consumer
+		sequences.lazySet(index, position + 1);
+		return true;
+	}
+
+	/**
+	 * Returns the number of records dropped because the buffer was full
+	 * @return The number of dropped records
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Writes any remaining records and stops the background writer
+	 */
+	public void close() {
+		writer.shutdown();
+
+		try {
+			if(!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+				logger.warning("Timed out waiting for audit log writer to finish");
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		drain();
+		closeFile();
+	}
+
+	private synchronized void drain() {
+		try {
+			boolean written = false;
+
+			while(true) {
+				int index = (int) (head & mask);
+
+				if(sequences.get(index) != head + 1) {
+					break;
+				}
+
+				if(output == null || shouldRotate()) {
+					rotate();
+				}
+
+				writeRecord(index);
+				written = true;
+
+				//Free the slot for the next lap
+				sequences.lazySet(index, head + mask + 1);
+				head++;
+			}
+
+			if(written) {
+				output.flush();
+			}
+		} catch(IOException e) {
+			logger.log(Level.WARNING, "Failed to write audit log", e);
+			closeFile();
+		}
+	}
+
+	private void writeRecord(int index) throws IOException {
+		Type type = TYPES[types[index]];
+		UUID player = new UUID(players[index * 4], players[index * 4 + 1]);
+		UUID other = new UUID(players[index * 4 + 2], players[index * 4 + 3]);
+		int value = values[index];
+
+		StringBuilder line = new StringBuilder(128)
+				.append(Instant.ofEpochMilli(times[index]))
+				.append(' ').append(type.name())
+				.append(' ').append(player);
+
+		if(!other.equals(NO_PLAYER)) {
+			line.append(' ').append(other);
+		}
+
+		switch(type) {
+			case TOGGLE -> line.append(value == STATE_ENABLED ? " enabled" : " disabled");
+			case CANCELLED -> line.append(' ').append(getReasonName(value));
+		}
+
+		output.write(line.append('\n').toString());
+	}
+
+	static String getReasonName(int reason) {
+		return switch(reason) {
+			case REASON_NONE -> "none";
+			case REASON_ATTACKER_OFFLINE -> "attacker-offline";
+			case REASON_ZONE -> "zone";
+			case REASON_ATTACKER_DISABLED -> "attacker-disabled";
+			case REASON_VICTIM_DISABLED -> "victim-disabled";
+			case REASON_PARTY -> "party";
+			default -> "unknown";
+		};
+	}
+
+	private boolean shouldRotate() {
+		return fileOutput.getCount() >= maxFileSize
+				|| System.currentTimeMillis() - fileOpenedAt >= rotateIntervalMillis;
+	}
+
+	private void rotate() throws IOException {
+		closeFile();
+
+		Path file = folder.resolve("audit-" + FILE_NAME_FORMAT.format(Instant.now()) + ".log.gz");
+
+		for (int i = 1; Files.exists(file); i++) {
+			file = folder.resolve("audit-" + FILE_NAME_FORMAT.format(Instant.now()) + "-" + i + ".log.gz");
+		}
+
+		fileOutput = new CountingOutputStream(Files.newOutputStream(file));
+		output = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(fileOutput, 8192, true),
+														   StandardCharsets.UTF_8));
+		fileOpenedAt = System.currentTimeMillis();
+	}
+
+	private void closeFile() {
+		if(output == null) {
+			return;
+		}
+
+		try {
+			output.close();
+		} catch(IOException e) {
+			logger.log(Level.WARNING, "Failed to close audit log file", e);
+		}
+
+		output = null;
+		fileOutput = null;
+	}
+
+	/**
+	 * Counts compressed bytes written, for size based rotation
+	 */
+	private static final class CountingOutputStream extends FilterOutputStream {
+		private long count = 0;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		long getCount() {
+			return count;
+		}
+	}
+}
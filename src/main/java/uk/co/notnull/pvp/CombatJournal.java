@@ -0,0 +1,282 @@
+package uk.co.notnull.pvp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal of combat tags, toggle cooldowns and pending punishments, allowing them to survive restarts
+ * Appends are queued and written in batches by a background thread, with one fsync per batch
+ * The journal is periodically compacted into a snapshot of the currently live records
+ */
+public final class CombatJournal {
+	private static final byte TYPE_TAG = 1;
+	private static final byte TYPE_TOGGLE = 2;
+	private static final byte TYPE_CLEAR = 3;
+	private static final byte TYPE_PUNISH = 4;
+	private static final byte TYPE_PUNISH_SERVED = 5;
+	private static final int RECORD_SIZE = 1 + 8 + 8 + 8;
+
+	private final Path path;
+	private final Logger logger;
+	private final Queue<JournalRecord> pending = new ConcurrentLinkedQueue<>();
+	private final ScheduledExecutorService writer;
+	private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 512);
+	private FileChannel channel;
+
+	private record JournalRecord(byte type, UUID uuid, long time) {
+	}
+
+	/**
+	 * Receives the state restored from the journal
+	 */
+	public interface ReplayTarget {
+		void restoreTag(UUID uuid, Instant time);
+
+		void restoreToggle(UUID uuid, Instant time);
+
+		void restorePunishment(UUID uuid, Instant time);
+	}
+
+	public CombatJournal(Path path, Logger logger) {
+		this.path = path;
+		this.logger = logger;
+		this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "PvP Journal Writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Replays the journal, passing any tags or toggles newer than the given cutoff to the target
+	 * Punishments are passed to the target until they are served, regardless of the cutoff
+	 * Should be called once before the journal is started
+	 * @param cutoff Records older than this are considered expired and are not restored
+	 * @param target The target to restore state into
+	 */
+	public void replay(Instant cutoff, ReplayTarget target) {
+		if(!Files.exists(path)) {
+			return;
+		}
+
+		Map<UUID, Long> tags = new HashMap<>();
+		Map<UUID, Long> toggles = new HashMap<>();
+		Map<UUID, Long> punishments = new HashMap<>();
+
+		try(FileChannel input = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+			while(true) {
+				while(record.hasRemaining() && input.read(record) >= 0) {
+					//Read until the record is complete or the end of the file is reached
+				}
+
+				//A partial trailing record means the server stopped mid-write, and is discarded
+				if(record.hasRemaining()) {
+					break;
+				}
+
+				record.flip();
+				byte type = record.get();
+				UUID uuid = new UUID(record.getLong(), record.getLong());
+				long time = record.getLong();
+				record.clear();
+
+				switch(type) {
+					case TYPE_TAG -> tags.put(uuid, time);
+					case TYPE_TOGGLE -> toggles.put(uuid, time);
+					case TYPE_CLEAR -> {
+						tags.remove(uuid);
+						toggles.remove(uuid);
+					}
+					case TYPE_PUNISH -> punishments.put(uuid, time);
+					case TYPE_PUNISH_SERVED -> punishments.remove(uuid);
+					default -> logger.warning("Ignoring unknown journal record type " + type);
+				}
+			}
+		} catch(IOException e) {
+			logger.log(Level.WARNING, "Failed to replay combat journal, combat tags may have been lost", e);
+		}
+
+		long cutoffMillis = cutoff.toEpochMilli();
+
+		tags.forEach((uuid, time) -> {
+			if(time > cutoffMillis) {
+				target.restoreTag(uuid, Instant.ofEpochMilli(time));
+			}
+		});
+
+		toggles.forEach((uuid, time) -> {
+			if(time > cutoffMillis) {
+				target.restoreToggle(uuid, Instant.ofEpochMilli(time));
+			}
+		});
+
+		punishments.forEach((uuid, time) -> target.restorePunishment(uuid, Instant.ofEpochMilli(time)));
+	}
+
+	/**
+	 * Opens the journal for appending and starts the background writer
+	 * @param flushIntervalMillis The interval between batched writes
+	 */
+	public void start(long flushIntervalMillis) throws IOException {
+		Files.createDirectories(path.getParent());
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+								   StandardOpenOption.APPEND);
+		writer.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public void appendTag(UUID uuid, Instant time) {
+		pending.offer(new JournalRecord(TYPE_TAG, uuid, time.toEpochMilli()));
+	}
+
+	public void appendToggle(UUID uuid, Instant time) {
+		pending.offer(new JournalRecord(TYPE_TOGGLE, uuid, time.toEpochMilli()));
+	}
+
+	public void appendClear(UUID uuid) {
+		pending.offer(new JournalRecord(TYPE_CLEAR, uuid, 0));
+	}
+
+	public void appendPunishment(UUID uuid, Instant time) {
+		pending.offer(new JournalRecord(TYPE_PUNISH, uuid, time.toEpochMilli()));
+	}
+
+	public void appendPunishmentServed(UUID uuid) {
+		pending.offer(new JournalRecord(TYPE_PUNISH_SERVED, uuid, 0));
+	}
+
+	/**
+	 * Replaces the journal contents with the given snapshot of live state
+	 * The snapshot must reflect every record appended before it was taken. Records appended afterwards are
+	 * written after the snapshot, so replaying them again is harmless.
+	 * @param tags Live combat tags
+	 * @param toggles Live toggle cooldowns
+	 * @param punishments Pending punishments
+	 */
+	public void compact(Map<UUID, Instant> tags, Map<UUID, Instant> toggles, Map<UUID, Instant> punishments) {
+		writer.execute(() -> {
+			Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+			try(FileChannel output = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+													  StandardOpenOption.TRUNCATE_EXISTING)) {
+				for (Map.Entry<UUID, Instant> entry : tags.entrySet()) {
+					write(output, new JournalRecord(TYPE_TAG, entry.getKey(), entry.getValue().toEpochMilli()));
+				}
+
+				for (Map.Entry<UUID, Instant> entry : toggles.entrySet()) {
+					write(output, new JournalRecord(TYPE_TOGGLE, entry.getKey(), entry.getValue().toEpochMilli()));
+				}
+
+				for (Map.Entry<UUID, Instant> entry : punishments.entrySet()) {
+					write(output, new JournalRecord(TYPE_PUNISH, entry.getKey(), entry.getValue().toEpochMilli()));
+				}
+
+				writeBuffer(output);
+				output.force(true);
+			} catch(IOException e) {
+				buffer.clear();
+				logger.log(Level.WARNING, "Failed to write compacted combat journal", e);
+				return;
+			}
+
+			try {
+				channel.close();
+				Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch(IOException e) {
+				logger.log(Level.WARNING, "Failed to replace combat journal with compacted copy", e);
+			}
+
+			try {
+				channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+										   StandardOpenOption.APPEND);
+			} catch(IOException e) {
+				logger.log(Level.SEVERE, "Failed to reopen combat journal", e);
+			}
+
+			flush();
+		});
+	}
+
+	/**
+	 * Writes any queued records and stops the background writer
+	 */
+	public void close() {
+		writer.shutdown();
+
+		try {
+			if(!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+				logger.warning("Timed out waiting for combat journal writer to finish");
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		flush();
+
+		try {
+			if(channel != null) {
+				channel.close();
+			}
+		} catch(IOException e) {
+			logger.log(Level.WARNING, "Failed to close combat journal", e);
+		}
+	}
+
+	private synchronized void flush() {
+		if(channel == null || !channel.isOpen() || pending.isEmpty()) {
+			return;
+		}
+
+		try {
+			JournalRecord record;
+
+			while((record = pending.poll()) != null) {
+				write(channel, record);
+			}
+
+			writeBuffer(channel);
+			channel.force(false);
+		} catch(IOException e) {
+			buffer.clear();
+			logger.log(Level.WARNING, "Failed to append to combat journal", e);
+		}
+	}
+
+	private void write(FileChannel output, JournalRecord record) throws IOException {
+		if(buffer.remaining() < RECORD_SIZE) {
+			writeBuffer(output);
+		}
+
+		buffer.put(record.type())
+				.putLong(record.uuid().getMostSignificantBits())
+				.putLong(record.uuid().getLeastSignificantBits())
+				.putLong(record.time());
+	}
+
+	private void writeBuffer(FileChannel output) throws IOException {
+		buffer.flip();
+
+		while(buffer.hasRemaining()) {
+			output.write(buffer);
+		}
+
+		buffer.clear();
+	}
+}
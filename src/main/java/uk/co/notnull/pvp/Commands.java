@@ -8,8 +8,11 @@ import cloud.commandframework.annotations.CommandDescription;
 import cloud.commandframework.annotations.CommandMethod;
 import cloud.commandframework.annotations.CommandPermission;
 import cloud.commandframework.annotations.specifier.Greedy;
+import cloud.commandframework.annotations.suggestions.Suggestions;
+import cloud.commandframework.annotations.specifier.Range;
 import cloud.commandframework.arguments.parser.ParserParameters;
 import cloud.commandframework.bukkit.CloudBukkitCapabilities;
+import cloud.commandframework.context.CommandContext;
 import cloud.commandframework.execution.AsynchronousCommandExecutionCoordinator;
 import cloud.commandframework.execution.CommandExecutionCoordinator;
 import cloud.commandframework.meta.CommandMeta;
@@ -18,14 +21,28 @@ import cloud.commandframework.minecraft.extras.MinecraftExceptionHandler;
 import cloud.commandframework.minecraft.extras.MinecraftHelp;
 import cloud.commandframework.paper.PaperCommandManager;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
 import java.util.function.Function;
 
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.ComponentLike;
+import org.bukkit.World;
 import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 public class Commands {
+	private static final int LIST_PAGE_SIZE = 10;
+	private static final int MAX_SUGGESTIONS = 100;
+
 	private final PvP plugin;
 	private PaperCommandManager<CommandSender> paperCommandManager;
     private AnnotationParser<CommandSender> annotationParser;
@@ -117,6 +134,11 @@ public class Commands {
     private void commandToggle(
             final @NonNull Player player
     ) {
+		//Toggling updates scoreboards and other main thread only state
+		plugin.getServer().getScheduler().runTask(plugin, () -> toggleSelf(player));
+	}
+
+	private void toggleSelf(Player player) {
 		if(plugin.hasPvPEnabled(player)) {
 			long toggleCooldown = plugin.getRemainingToggleCooldown(player);
 			long pvpCooldown = plugin.getRemainingPvPCooldown(player);
@@ -148,15 +170,19 @@ public class Commands {
 	@CommandPermission("pvp.info")
     private void commandInfo(
             final @NonNull CommandSender sender,
-            final @Argument("player") Player target
+            final @Argument(value = "player", suggestions = "players") String targetName
     ) {
-		if(plugin.hasPvPEnabled(target)) {
-			sender.sendMessage(Messages.getComponent("target-info-enabled", Collections.emptyMap(),
-													 Collections.singletonMap("player", target.displayName())));
-		} else {
-			sender.sendMessage(Messages.getComponent("target-info-disabled", Collections.emptyMap(),
-													 Collections.singletonMap("player", target.displayName())));
+		Optional<Target> target = resolveTarget(sender, targetName);
+
+		if(target.isEmpty()) {
+			return;
 		}
+
+		plugin.getPvPState(target.get().uuid()).thenAccept(enabled -> {
+			sender.sendMessage(Messages.getComponent(enabled ? "target-info-enabled" : "target-info-disabled",
+													 Collections.emptyMap(),
+													 Collections.singletonMap("player", target.get().name())));
+		});
 	}
 
 	@CommandMethod("pvp toggle <player>")
@@ -164,8 +190,32 @@ public class Commands {
 	@CommandPermission("pvp.toggle.other")
     private void commandToggleOther(
             final @NonNull CommandSender sender,
-            final @Argument("player") Player target
+            final @Argument(value = "player", suggestions = "toggle-players") String targetName
     ) {
+		Optional<Target> target = resolveTarget(sender, targetName);
+
+		if(target.isEmpty()) {
+			return;
+		}
+
+		if(target.get().player() != null) {
+			plugin.getServer().getScheduler().runTask(plugin, () -> toggleOnline(sender, target.get().player()));
+			return;
+		}
+
+		//Offline players have no cooldowns or viewers to notify, so only the persisted state needs changing
+		UUID uuid = target.get().uuid();
+
+		plugin.getPvPState(uuid)
+				.thenCompose(enabled -> plugin.setPvPState(uuid, !enabled).thenApply(ignored -> !enabled))
+				.thenAccept(enabled -> {
+					sender.sendMessage(Messages.getComponent(enabled ? "target-pvp-enabled" : "target-pvp-disabled",
+															 Collections.emptyMap(),
+															 Collections.singletonMap("player", target.get().name())));
+				});
+	}
+
+	private void toggleOnline(CommandSender sender, Player target) {
 		if(plugin.togglePvP(target)) {
 			sender.sendMessage(Messages.getComponent("target-pvp-enabled", Collections.emptyMap(),
 													 Collections.singletonMap("player", target.displayName())));
@@ -187,11 +237,466 @@ public class Commands {
 		}
 	}
 
+	/**
+	 * Resolves the given player name to an online player, or an offline player known to the name cache
+	 * An error is sent to the sender if the name cannot be resolved
+	 * No profile lookups are performed, so this is safe to call from the command thread
+	 */
+	private Optional<Target> resolveTarget(CommandSender sender, String name) {
+		Player player = plugin.getServer().getPlayerExact(name);
+
+		if(player != null) {
+			return Optional.of(new Target(player.getUniqueId(), player.displayName(), player));
+		}
+
+		Optional<UUID> uuid = plugin.getNameCache().getUUID(name);
+
+		if(uuid.isEmpty()) {
+			sender.sendMessage(Messages.getComponent("errors.unknown-player",
+													 Collections.singletonMap("player", name),
+													 Collections.emptyMap()));
+			return Optional.empty();
+		}
+
+		String knownName = plugin.getNameCache().getName(uuid.get()).orElse(name);
+		return Optional.of(new Target(uuid.get(), Component.text(knownName), null));
+	}
+
+	@Suggestions("players")
+	private List<String> suggestPlayers(final CommandContext<CommandSender> context, final String input) {
+		CommandSender sender = context.getSender();
+
+		return plugin.getPlayerNames().complete(input, player -> canSee(sender, player), MAX_SUGGESTIONS);
+	}
+
+	/**
+	 * Suggests players who can be toggled into the sender's own state, i.e. those in the opposite state
+	 * Senders who are not players are offered every player
+	 */
+	@Suggestions("toggle-players")
+	private List<String> suggestTogglePlayers(final CommandContext<CommandSender> context, final String input) {
+		CommandSender sender = context.getSender();
+
+		if(!(sender instanceof Player viewer)) {
+			return suggestPlayers(context, input);
+		}
+
+		//The PvP state set is concurrent, so can be read from the completion thread
+		boolean state = plugin.hasPvPEnabled(viewer);
+
+		return plugin.getPlayerNames().complete(input, player -> canSee(sender, player)
+				&& plugin.hasPvPEnabled(player) != state, MAX_SUGGESTIONS);
+	}
+
+	private static boolean canSee(CommandSender sender, Player player) {
+		return !(sender instanceof Player viewer) || viewer.canSee(player);
+	}
+
+	private record Target(UUID uuid, ComponentLike name, @Nullable Player player) {
+	}
+
+	@CommandMethod("pvp stats")
+    @CommandDescription("Shows the plugin's current load and degradation tier")
+	@CommandPermission("pvp.stats")
+    private void commandStats(final @NonNull CommandSender sender) {
+		//The load shedder's budget is only safe to read on the main thread
+		plugin.getServer().getScheduler().runTask(plugin, () -> showStats(sender));
+	}
+
+	private void showStats(CommandSender sender) {
+		LoadShedder loadShedder = plugin.getLoadShedder();
+		AuditLog auditLog = plugin.getAuditLog();
+
+		sender.sendMessage(Messages.getComponent("stats-load",
+												 Map.of("tier", loadShedder.getTier().name().toLowerCase(Locale.ROOT),
+														"average", String.format(Locale.ROOT, "%.2f",
+																				 loadShedder.getAverageMillis()),
+														"budget", String.format(Locale.ROOT, "%.2f",
+																				loadShedder.getBudgetMillis())),
+												 Collections.emptyMap()));
+
+		if(auditLog != null) {
+			sender.sendMessage(Messages.getComponent("stats-audit",
+													 Collections.singletonMap("dropped",
+																			  String.valueOf(auditLog.getDropped())),
+													 Collections.emptyMap()));
+		}
+	}
+
 	@CommandMethod("pvp reload")
     @CommandDescription("Reload the configuration")
 	@CommandPermission("pvp.reload")
     private void commandReload(final @NonNull CommandSender sender) {
-		plugin.reload();
-		sender.sendMessage(Messages.getComponent("reloaded"));
+		plugin.getServer().getScheduler().runTask(plugin, () -> {
+			plugin.reload();
+			sender.sendMessage(Messages.getComponent("reloaded"));
+		});
+	}
+
+	@CommandMethod("pvp bulk <action> <targets>")
+    @CommandDescription("Toggles, enables or disables PvP for all players matching a selector")
+	@CommandPermission("pvp.toggle.bulk")
+    private void commandBulk(
+            final @NonNull CommandSender sender,
+            final @Argument("action") PvP.BulkAction action,
+            final @Argument("targets") String targets
+    ) {
+		//Selectors must be resolved on the main thread
+		plugin.getServer().getScheduler().runTask(plugin, () -> {
+			List<Player> players = new ArrayList<>();
+
+			try {
+				for (Entity entity : plugin.getServer().selectEntities(sender, targets)) {
+					if(entity instanceof Player player) {
+						players.add(player);
+					}
+				}
+			} catch (IllegalArgumentException e) {
+				sender.sendMessage(Messages.getComponent("errors.invalid-selector",
+														 Collections.singletonMap("selector", targets),
+														 Collections.emptyMap()));
+				return;
+			}
+
+			applyBulk(sender, action, players);
+		});
+	}
+
+	@CommandMethod("pvp bulk <action> world <world>")
+    @CommandDescription("Toggles, enables or disables PvP for all players in a world")
+	@CommandPermission("pvp.toggle.bulk")
+    private void commandBulkWorld(
+            final @NonNull CommandSender sender,
+            final @Argument("action") PvP.BulkAction action,
+            final @Argument("world") World world
+    ) {
+		plugin.getServer().getScheduler().runTask(plugin, () -> applyBulk(sender, action, world.getPlayers()));
+	}
+
+	private void applyBulk(CommandSender sender, PvP.BulkAction action, List<Player> players) {
+		if(players.isEmpty()) {
+			sender.sendMessage(Messages.getComponent("errors.no-players-matched"));
+			return;
+		}
+
+		PvP.BulkResult result = plugin.bulkSetPvP(players, action, sender.getName());
+
+		sender.sendMessage(Messages.getComponent("bulk-result",
+												 Map.of("enabled", String.valueOf(result.enabled()),
+														"disabled", String.valueOf(result.disabled())),
+												 Collections.emptyMap()));
+	}
+
+	@CommandMethod("pvp list [filter] [page]")
+    @CommandDescription("Lists players with PvP enabled, disabled or in combat")
+	@CommandPermission("pvp.list")
+    private void commandList(
+            final @NonNull CommandSender sender,
+            final @Argument(value = "filter", defaultValue = "enabled") PvP.ListFilter filter,
+            final @Argument(value = "page", defaultValue = "1") @Range(min = "1") int page
+    ) {
+		plugin.getServer().getScheduler().runTask(plugin, () -> {
+			int total = plugin.countPlayers(filter);
+			int pages = Math.max(1, (total + LIST_PAGE_SIZE - 1) / LIST_PAGE_SIZE);
+			List<UUID> players = plugin.listPlayers(filter, (page - 1) * LIST_PAGE_SIZE, LIST_PAGE_SIZE);
+
+			sender.sendMessage(Messages.getComponent("list-header",
+													 Map.of("filter", filter.name().toLowerCase(Locale.ROOT),
+															"page", String.valueOf(Math.min(page, pages)),
+															"pages", String.valueOf(pages),
+															"total", String.valueOf(total)),
+													 Collections.emptyMap()));
+
+			if(players.isEmpty()) {
+				sender.sendMessage(Messages.getComponent("list-empty"));
+				return;
+			}
+
+			for (UUID uuid : players) {
+				sender.sendMessage(Messages.getComponent("list-entry", Collections.emptyMap(),
+														 Collections.singletonMap("player", getDisplayName(uuid))));
+			}
+		});
+	}
+
+	@CommandMethod("pvp top [page]")
+    @CommandDescription("Shows the PvP kill leaderboard")
+	@CommandPermission("pvp.top")
+    private void commandTop(
+            final @NonNull CommandSender sender,
+            final @Argument(value = "page", defaultValue = "1") @Range(min = "1") int page
+    ) {
+		PvPStats stats = plugin.getStats();
+
+		if(stats == null) {
+			sender.sendMessage(Messages.getComponent("errors.stats-disabled"));
+			return;
+		}
+
+		plugin.getServer().getScheduler().runTask(plugin, () -> {
+			int total = stats.getLeaderboardSize();
+			int pages = Math.max(1, (total + LIST_PAGE_SIZE - 1) / LIST_PAGE_SIZE);
+			int offset = (page - 1) * LIST_PAGE_SIZE;
+			List<PvPStats.PlayerStats> entries = stats.getLeaderboard(offset, LIST_PAGE_SIZE);
+
+			sender.sendMessage(Messages.getComponent("top-header",
+													 Map.of("page", String.valueOf(Math.min(page, pages)),
+															"pages", String.valueOf(pages)),
+													 Collections.emptyMap()));
+
+			if(entries.isEmpty()) {
+				sender.sendMessage(Messages.getComponent("list-empty"));
+				return;
+			}
+
+			for (int i = 0; i < entries.size(); i++) {
+				PvPStats.PlayerStats entry = entries.get(i);
+
+				sender.sendMessage(Messages.getComponent("top-entry",
+														 Map.of("position", String.valueOf(offset + i + 1),
+																"kills", String.valueOf(entry.getKills()),
+																"deaths", String.valueOf(entry.getDeaths()),
+																"best_streak", String.valueOf(entry.getBestStreak())),
+														 Collections.singletonMap("player", getDisplayName(entry.getUUID()))));
+			}
+		});
+	}
+
+	@CommandMethod("pvp party invite <player>")
+    @CommandDescription("Invites a player to your party, creating one if needed")
+	@CommandPermission("pvp.party")
+    private void commandPartyInvite(
+            final @NonNull Player player,
+            final @Argument(value = "player", suggestions = "players") Player target
+    ) {
+		if(player.equals(target)) {
+			player.sendMessage(Messages.getComponent("errors.party-self"));
+			return;
+		}
+
+		plugin.getServer().getScheduler().runTask(plugin, () -> {
+			Parties.Result result = plugin.getParties().invite(player.getUniqueId(), target.getUniqueId(),
+															   plugin.getMaxPartySize());
+
+			if(result != Parties.Result.SUCCESS) {
+				sendPartyError(player, result, target);
+				return;
+			}
+
+			player.sendMessage(Messages.getComponent("party-invite-sent", Collections.emptyMap(),
+													 Collections.singletonMap("player", target.displayName())));
+			target.sendMessage(Messages.getComponent("party-invited",
+													 Collections.singletonMap("name", player.getName()),
+													 Collections.singletonMap("player", player.displayName())));
+		});
+	}
+
+	@CommandMethod("pvp party join <player>")
+    @CommandDescription("Accepts an invite to another player's party")
+	@CommandPermission("pvp.party")
+    private void commandPartyJoin(
+            final @NonNull Player player,
+            final @Argument(value = "player", suggestions = "players") Player target
+    ) {
+		plugin.getServer().getScheduler().runTask(plugin, () -> {
+			Parties.Result result = plugin.getParties().join(player.getUniqueId(), target.getUniqueId(),
+															 plugin.getMaxPartySize());
+
+			if(result != Parties.Result.SUCCESS) {
+				sendPartyError(player, result, target);
+				return;
+			}
+
+			player.sendMessage(Messages.getComponent("party-joined", Collections.emptyMap(),
+													 Collections.singletonMap("player", target.displayName())));
+			sendToParty(player, Messages.getComponent("party-member-joined", Collections.emptyMap(),
+													  Collections.singletonMap("player", player.displayName())));
+		});
+	}
+
+	@CommandMethod("pvp party leave")
+    @CommandDescription("Leaves your current party")
+	@CommandPermission("pvp.party")
+    private void commandPartyLeave(final @NonNull Player player) {
+		plugin.getServer().getScheduler().runTask(plugin, () -> {
+			Parties.Party party = plugin.getParties().getParty(player.getUniqueId());
+			Parties.Result result = plugin.getParties().leave(player.getUniqueId());
+
+			if(result != Parties.Result.SUCCESS) {
+				sendPartyError(player, result, player);
+				return;
+			}
+
+			player.sendMessage(Messages.getComponent("party-left"));
+
+			Component notification = Messages.getComponent("party-member-left", Collections.emptyMap(),
+														   Collections.singletonMap("player", player.displayName()));
+
+			for (UUID member : party.getMembers()) {
+				Player onlineMember = plugin.getServer().getPlayer(member);
+
+				if(onlineMember != null) {
+					onlineMember.sendMessage(notification);
+				}
+			}
+		});
+	}
+
+	@CommandMethod("pvp party list")
+    @CommandDescription("Lists the members of your party")
+	@CommandPermission("pvp.party")
+    private void commandPartyList(final @NonNull Player player) {
+		plugin.getServer().getScheduler().runTask(plugin, () -> {
+			Parties.Party party = plugin.getParties().getParty(player.getUniqueId());
+
+			if(party == null) {
+				sendPartyError(player, Parties.Result.NOT_IN_PARTY, player);
+				return;
+			}
+
+			player.sendMessage(Messages.getComponent("party-list-header", Collections.emptyMap(),
+													 Collections.singletonMap("player", getDisplayName(party.getLeader()))));
+
+			for (UUID member : party.getMembers()) {
+				player.sendMessage(Messages.getComponent("list-entry", Collections.emptyMap(),
+														 Collections.singletonMap("player", getDisplayName(member))));
+			}
+		});
+	}
+
+	@CommandMethod("pvp duel <player>")
+    @CommandDescription("Challenges a player to a duel, allowing PvP between you both for a limited time")
+	@CommandPermission("pvp.duel")
+    private void commandDuel(
+            final @NonNull Player player,
+            final @Argument(value = "player", suggestions = "players") Player target
+    ) {
+		if(player.equals(target)) {
+			player.sendMessage(Messages.getComponent("errors.duel-self"));
+			return;
+		}
+
+		plugin.getServer().getScheduler().runTask(plugin, () -> {
+			long timeout = plugin.getDuelRequestTimeout();
+			Duels.Result result = plugin.getDuels().request(player.getUniqueId(), target.getUniqueId(),
+															System.currentTimeMillis() + timeout * 1000);
+
+			if(result != Duels.Result.SUCCESS) {
+				sendDuelError(player, result, target);
+				return;
+			}
+
+			player.sendMessage(Messages.getComponent("duel-request-sent",
+													 Collections.singletonMap("timeout", String.valueOf(timeout)),
+													 Collections.singletonMap("player", target.displayName())));
+			target.sendMessage(Messages.getComponent("duel-requested",
+													 Map.of("name", player.getName(),
+															"duration", String.valueOf(plugin.getDuelDuration())),
+													 Collections.singletonMap("player", player.displayName())));
+		});
+	}
+
+	@CommandMethod("pvp duel accept <player>")
+    @CommandDescription("Accepts a duel request from a player")
+	@CommandPermission("pvp.duel")
+    private void commandDuelAccept(
+            final @NonNull Player player,
+            final @Argument(value = "player", suggestions = "players") Player challenger
+    ) {
+		plugin.getServer().getScheduler().runTask(plugin, () -> {
+			long now = System.currentTimeMillis();
+			long duration = plugin.getDuelDuration();
+			Duels.Result result = plugin.getDuels().accept(player.getUniqueId(), challenger.getUniqueId(),
+														   now, now + duration * 1000);
+
+			if(result != Duels.Result.SUCCESS) {
+				sendDuelError(player, result, challenger);
+				return;
+			}
+
+			Map<String, String> replacements = Collections.singletonMap("duration", String.valueOf(duration));
+
+			player.sendMessage(Messages.getComponent("duel-started", replacements,
+													 Collections.singletonMap("player", challenger.displayName())));
+			challenger.sendMessage(Messages.getComponent("duel-started", replacements,
+														 Collections.singletonMap("player", player.displayName())));
+		});
+	}
+
+	@CommandMethod("pvp duel deny <player>")
+    @CommandDescription("Denies a duel request from a player")
+	@CommandPermission("pvp.duel")
+    private void commandDuelDeny(
+            final @NonNull Player player,
+            final @Argument(value = "player", suggestions = "players") Player challenger
+    ) {
+		plugin.getServer().getScheduler().runTask(plugin, () -> {
+			Duels.Result result = plugin.getDuels().deny(player.getUniqueId(), challenger.getUniqueId(),
+														 System.currentTimeMillis());
+
+			if(result != Duels.Result.SUCCESS) {
+				sendDuelError(player, result, challenger);
+				return;
+			}
+
+			player.sendMessage(Messages.getComponent("duel-deny-sent", Collections.emptyMap(),
+													 Collections.singletonMap("player", challenger.displayName())));
+			challenger.sendMessage(Messages.getComponent("duel-denied", Collections.emptyMap(),
+														 Collections.singletonMap("player", player.displayName())));
+		});
+	}
+
+	private void sendDuelError(Player player, Duels.Result result, Player target) {
+		String message = switch(result) {
+			case ALREADY_DUELLING -> "errors.duel-already-duelling";
+			case NO_REQUEST -> "errors.duel-no-request";
+			case SUCCESS -> null;
+		};
+
+		if(message != null) {
+			player.sendMessage(Messages.getComponent(message, Collections.emptyMap(),
+													 Collections.singletonMap("player", target.displayName())));
+		}
+	}
+
+	private void sendToParty(Player player, Component message) {
+		Parties.Party party = plugin.getParties().getParty(player.getUniqueId());
+
+		if(party == null) {
+			return;
+		}
+
+		for (UUID member : party.getMembers()) {
+			Player onlineMember = plugin.getServer().getPlayer(member);
+
+			if(onlineMember != null && !onlineMember.equals(player)) {
+				onlineMember.sendMessage(message);
+			}
+		}
+	}
+
+	private void sendPartyError(Player player, Parties.Result result, Player target) {
+		String message = switch(result) {
+			case ALREADY_IN_PARTY -> "errors.party-already-in-party";
+			case NOT_IN_PARTY -> "errors.party-not-in-party";
+			case NO_INVITE -> "errors.party-no-invite";
+			case PARTY_FULL -> "errors.party-full";
+			case SUCCESS -> null;
+		};
+
+		if(message != null) {
+			player.sendMessage(Messages.getComponent(message, Collections.emptyMap(),
+													 Collections.singletonMap("player", target.displayName())));
+		}
+	}
+
+	private ComponentLike getDisplayName(UUID uuid) {
+		Player player = plugin.getServer().getPlayer(uuid);
+
+		if(player != null) {
+			return player.displayName();
+		}
+
+		return Component.text(plugin.getNameCache().getName(uuid).orElseGet(uuid::toString));
 	}
 }
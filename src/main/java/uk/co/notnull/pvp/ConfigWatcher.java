@@ -0,0 +1,95 @@
+package uk.co.notnull.pvp;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches the plugin's data folder for changes to the given files, and passes changed files to a handler
+ * The handler is called on the watcher thread. Bursts of events, such as editors writing a file in several steps,
+ * are coalesced so the handler is called once per changed file.
+ */
+public final class ConfigWatcher implements Runnable {
+	private static final long DEBOUNCE_MILLIS = 250;
+
+	private final Path folder;
+	private final Set<String> files;
+	private final Consumer<String> handler;
+	private final Logger logger;
+	private final WatchService watchService;
+	private final Thread thread;
+
+	public ConfigWatcher(Path folder, Set<String> files, Consumer<String> handler, Logger logger) throws IOException {
+		this.folder = folder;
+		this.files = files;
+		this.handler = handler;
+		this.logger = logger;
+		this.watchService = FileSystems.getDefault().newWatchService();
+
+		folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+		thread = new Thread(this, "PvP Config Watcher");
+		thread.setDaemon(true);
+	}
+
+	public void start() {
+		thread.start();
+	}
+
+	public void stop() {
+		try {
+			watchService.close();
+		} catch(IOException e) {
+			logger.log(Level.WARNING, "Failed to close config watcher", e);
+		}
+
+		thread.interrupt();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while(!Thread.currentThread().isInterrupted()) {
+				Set<String> changed = new HashSet<>();
+				WatchKey key = watchService.take();
+
+				//Collect events until the folder has been quiet for a short time
+				while(key != null) {
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if(event.context() instanceof Path path && files.contains(path.toString())) {
+							changed.add(path.toString());
+						}
+					}
+
+					if(!key.reset()) {
+						logger.warning("Config watcher can no longer watch " + folder + ", stopping");
+						return;
+					}
+
+					key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+				}
+
+				for (String file : changed) {
+					try {
+						handler.accept(file);
+					} catch(Exception e) {
+						logger.log(Level.WARNING, "Failed to reload " + file, e);
+					}
+				}
+			}
+		} catch(InterruptedException | ClosedWatchServiceException ignored) {
+			//Watcher stopped
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package uk.co.notnull.pvp;
+
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Consensual duels, which allow PvP between exactly two players for a limited time regardless of their PvP states
+ * Active duels are keyed by the packed slots of both players, so checking whether two players are duelling is a
+ * single primitive map probe. Expiry is handled by a deadline ordered queue, from which duels that ended early are
+ * lazily discarded. Must only be used on the main thread.
+ */
+public final class Duels {
+	public enum Result {
+		SUCCESS,
+		ALREADY_DUELLING,
+		NO_REQUEST
+	}
+
+	public record Duel(UUID player1, UUID player2, long key, long endsAt) {
+		/**
+		 * Returns the other participant of this duel
+		 * @param player One participant's UUID
+		 * @return The other participant's UUID
+		 */
+		public UUID getOpponent(UUID player) {
+			return player.equals(player1) ? player2 : player1;
+		}
+	}
+
+	private final PlayerSlots slots;
+	private final Long2ObjectOpenHashMap<Duel> active = new Long2ObjectOpenHashMap<>();
+	private final Map<UUID, Duel> playerDuels = new HashMap<>();
+	private final PriorityQueue<Duel> deadlines = new PriorityQueue<>(Comparator.comparingLong(Duel::endsAt));
+
+	//Pending requests, keyed by challenger slot then target slot, with the time they expire
+	private final Long2LongOpenHashMap requests = new Long2LongOpenHashMap();
+
+	public Duels(PlayerSlots slots) {
+		this.slots = slots;
+	}
+
+	/**
+	 * Returns whether the given players are duelling each other
+	 * Both players must be online
+	 * @param player1 The first player's UUID
+	 * @param player2 The second player's UUID
+	 * @return Whether they are duelling
+	 */
+	public boolean areDuelling(UUID player1, UUID player2) {
+		if(active.isEmpty()) {
+			return false;
+		}
+
+		int slot1 = slots.get(player1);
+		int slot2 = slots.get(player2);
+
+		if(slot1 == PlayerSlots.NO_SLOT || slot2 == PlayerSlots.NO_SLOT) {
+			return false;
+		}
+
+		return active.containsKey(getPairKey(slot1, slot2));
+	}
+
+	/**
+	 * Challenges a player to a duel, replacing any existing request between them
+	 * @param challenger The challenging player's UUID
+	 * @param target The challenged player's UUID
+	 * @param expiresAt The time in milliseconds after which the request can no longer be accepted
+	 * @return The result
+	 */
+	public Result request(UUID challenger, UUID target, long expiresAt) {
+		if(playerDuels.containsKey(challenger) || playerDuels.containsKey(target)) {
+			return Result.ALREADY_DUELLING;
+		}
+
+		int challengerSlot = slots.get(challenger);
+		int targetSlot = slots.get(target);
+
+		if(challengerSlot == PlayerSlots.NO_SLOT || targetSlot == PlayerSlots.NO_SLOT) {
+			return Result.NO_REQUEST;
+		}
+
+		requests.put(getRequestKey(challengerSlot, targetSlot), expiresAt);
+		return Result.SUCCESS;
+	}
+
+	/**
+	 * Accepts a duel request, starting the duel
+	 * @param target The accepting player's UUID
+	 * @param challenger The UUID of the player who sent the request
+	 * @param now The current time in milliseconds
+	 * @param endsAt The time in milliseconds at which the duel will end
+	 * @return The result
+	 */
+	public Result accept(UUID target, UUID challenger, long now, long endsAt) {
+		int challengerSlot = slots.get(challenger);
+		int targetSlot = slots.get(target);
+
+		if(challengerSlot == PlayerSlots.NO_SLOT || targetSlot == PlayerSlots.NO_SLOT) {
+			return Result.NO_REQUEST;
+		}
+
+		long expiresAt = requests.remove(getRequestKey(challengerSlot, targetSlot));
+
+		if(expiresAt == requests.defaultReturnValue() || expiresAt < now) {
+			return Result.NO_REQUEST;
+		}
+
+		if(playerDuels.containsKey(challenger) || playerDuels.containsKey(target)) {
+			return Result.ALREADY_DUELLING;
+		}
+
+		Duel duel = new Duel(challenger, target, getPairKey(challengerSlot, targetSlot), endsAt);
+
+		active.put(duel.key(), duel);
+		playerDuels.put(challenger, duel);
+		playerDuels.put(target, duel);
+		deadlines.add(duel);
+
+		return Result.SUCCESS;
+	}
+
+	/**
+	 * Denies a duel request
+	 * @param target The denying player's UUID
+	 * @param challenger The UUID of the player who sent the request
+	 * @param now The current time in milliseconds
+	 * @return The result
+	 */
+	public Result deny(UUID target, UUID challenger, long now) {
+		int challengerSlot = slots.get(challenger);
+		int targetSlot = slots.get(target);
+
+		if(challengerSlot == PlayerSlots.NO_SLOT || targetSlot == PlayerSlots.NO_SLOT) {
+			return Result.NO_REQUEST;
+		}
+
+		long expiresAt = requests.remove(getRequestKey(challengerSlot, targetSlot));
+		return expiresAt == requests.defaultReturnValue() || expiresAt < now ? Result.NO_REQUEST : Result.SUCCESS;
+	}
+
+	/**
+	 * Ends the active duel of the given player, if any
+	 * @param uuid The player's UUID
+	 * @return The ended duel, or null if the player was not duelling
+	 */
+	public @Nullable Duel end(UUID uuid) {
+		Duel duel = playerDuels.remove(uuid);
+
+		if(duel != null) {
+			playerDuels.remove(duel.getOpponent(uuid));
+			active.remove(duel.key());
+			//The deadline queue entry is discarded when it is reached
+		}
+
+		return duel;
+	}
+
+	/**
+	 * Ends all duels which have reached their deadline
+	 * @param now The current time in milliseconds
+	 * @return The duels which have ended
+	 */
+	public List<Duel> expire(long now) {
+		List<Duel> expired = null;
+
+		while(!deadlines.isEmpty() && deadlines.peek().endsAt() <= now) {
+			Duel duel = deadlines.poll();
+
+			//Skip duels which have already ended early
+			if(active.get(duel.key()) != duel) {
+				continue;
+			}
+
+			end(duel.player1());
+
+			if(expired == null) {
+				expired = new ArrayList<>();
+			}
+
+			expired.add(duel);
+		}
+
+		return expired != null ? expired : Collections.emptyList();
+	}
+
+	/**
+	 * Ends the active duel and discards any requests of the given player, before their slot is released
+	 * @param uuid The leaving player's UUID
+	 * @return The ended duel, or null if the player was not duelling
+	 */
+	public @Nullable Duel onQuit(UUID uuid) {
+		int slot = slots.get(uuid);
+
+		if(slot != PlayerSlots.NO_SLOT && !requests.isEmpty()) {
+			LongIterator iterator = requests.keySet().iterator();
+
+			while(iterator.hasNext()) {
+				long key = iterator.nextLong();
+
+				if((int) (key >>> 32) == slot || (int) key == slot) {
+					iterator.remove();
+				}
+			}
+		}
+
+		return end(uuid);
+	}
+
+	private static long getPairKey(int slot1, int slot2) {
+		return getRequestKey(Math.min(slot1, slot2), Math.max(slot1, slot2));
+	}
+
+	private static long getRequestKey(int challengerSlot, int targetSlot) {
+		return ((long) challengerSlot << 32) | (targetSlot & 0xFFFFFFFFL);
+	}
+}
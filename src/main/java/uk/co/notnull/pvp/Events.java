@@ -1,5 +1,7 @@
 package uk.co.notnull.pvp;
 
+import com.destroystokyo.paper.event.entity.EntityRemoveFromWorldEvent;
+import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.block.Block;
@@ -11,9 +13,14 @@ import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockIgniteEvent;
 import org.bukkit.event.block.BlockPlaceEvent;
 import org.bukkit.event.entity.*;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerBucketEmptyEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+import org.bukkit.event.world.EntitiesLoadEvent;
+import org.bukkit.event.world.EntitiesUnloadEvent;
 import org.bukkit.metadata.FixedMetadataValue;
 import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionType;
@@ -22,13 +29,35 @@ import java.util.*;
 
 public class Events implements Listener {
 	private final PvP plugin;
+	private final OwnerIndex ownerIndex;
+
+	//Attribution resolved by onPlayerDamage, reused by onPlayerDamaged for the same event
+	private EntityDamageByEntityEvent damageContextEvent;
+	private OfflinePlayer damageContextAttacker;
+
+	//Last player to place a pumpkin this tick, for attributing iron golems to their builder
+	private UUID lastPumpkinPlacer;
+	private Location lastPumpkinLocation;
+	private int lastPumpkinTick;
 
 	public Events(PvP plugin) {
 		this.plugin = plugin;
+		this.ownerIndex = new OwnerIndex(plugin);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+		if(event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+			plugin.preloadPlayerState(event.getUniqueId());
+		}
 	}
 
 	@EventHandler
 	public void onPlayerJoin(PlayerJoinEvent event) {
+		plugin.getNameCache().update(event.getPlayer().getUniqueId(), event.getPlayer().getName());
+		plugin.handleJoin(event.getPlayer());
+		plugin.updateNametag(event.getPlayer());
+
 		//Warn player if PvP is still enabled
 		if(plugin.hasPvPEnabled(event.getPlayer())) {
 			event.getPlayer().sendMessage(Messages.getComponent("self-pvp-still-enabled"));
@@ -37,15 +66,29 @@ public class Events implements Listener {
 
 	@EventHandler
 	public void onPlayerLeave(PlayerQuitEvent event) {
-		//Kill player if they are abandoning a fight
-		if(plugin.getRemainingPvPCooldown(event.getPlayer()) > 0) {
+		//Kill player if they are abandoning a fight, unless they may be switching to another server
+		if(plugin.getRemainingPvPCooldown(event.getPlayer()) > 0 && !plugin.deferPunishment(event.getPlayer())) {
+			plugin.recordPunishment(event.getPlayer());
 			event.getPlayer().setHealth(0);
 			plugin.getServer().broadcast(
 					Messages.getComponent("notify-pvp-punish", Collections.emptyMap(),
 										  Collections.singletonMap("player", event.getPlayer().displayName())));
 		}
 
-		plugin.clearPlayer(event.getPlayer());
+		plugin.clearLeavingPlayer(event.getPlayer());
+		plugin.removeNametag(event.getPlayer());
+		plugin.handleQuit(event.getPlayer());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onPlayerTeleport(PlayerTeleportEvent event) {
+		//Teleports can move players further than cached nearby player scans allow for
+		plugin.invalidateProximityCache();
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onPlayerRespawn(PlayerRespawnEvent event) {
+		plugin.invalidateProximityCache();
 	}
 
 	@EventHandler(ignoreCancelled = true)
@@ -54,12 +97,15 @@ public class Events implements Listener {
 			//Prevent damage if either player has PvP disabled
 			Optional<OfflinePlayer> attacker = plugin.getResponsiblePlayer(event.getDamager());
 
+			damageContextEvent = event;
+			damageContextAttacker = attacker.orElse(null);
+
 			if(attacker.isPresent()) {
 				if(!plugin.checkPvPAttempt(attacker.get(), victim)) {
 					event.setCancelled(true);
 
-					if(event.getDamager() instanceof Tameable) {
-						((Tameable) event.getDamager()).setTarget(null);
+					if(event.getDamager() instanceof Mob mob) {
+						mob.setTarget(null);
 					}
 				}
 
@@ -67,6 +113,27 @@ public class Events implements Listener {
 			}
 		}
 
+		if(event.getEntity() instanceof Tameable) {
+			UUID ownerId = ownerIndex.getOwner(event.getEntity());
+
+			if(ownerId == null) {
+				return;
+			}
+
+			//Prevent damage to owned entities if either player has PvP disabled
+			plugin.getResponsiblePlayer(event.getDamager()).ifPresent(attacker -> {
+				if(!plugin.checkOwnedEntityAttempt(attacker, event.getEntity(), ownerId)) {
+					event.setCancelled(true);
+
+					if(event.getDamager() instanceof Mob mob) {
+						mob.setTarget(null);
+					}
+				}
+			});
+
+			return;
+		}
+
 		if(event.getEntity() instanceof EnderCrystal crystal) {
 			plugin.getResponsiblePlayer(event.getDamager()).ifPresent(attacker -> {
 				crystal.setMetadata("responsible", new FixedMetadataValue(plugin, attacker.getUniqueId()));
@@ -89,12 +156,35 @@ public class Events implements Listener {
 			return;
 		}
 
+		OfflinePlayer attacker;
+
+		//Reuse the attribution from onPlayerDamage if it handled this event. It may not have if another event
+		//was fired in between, or if the event was uncancelled after NORMAL priority
+		if(damageContextEvent == event) {
+			attacker = damageContextAttacker;
+		} else {
+			attacker = plugin.getResponsiblePlayer(event.getDamager()).orElse(null);
+		}
+
+		damageContextEvent = null;
+		damageContextAttacker = null;
+
 		//Record PvP damage
-		plugin.getResponsiblePlayer(event.getDamager()).ifPresent(attacker -> {
-			if(attacker instanceof Player onlinePlayer) {
-				plugin.recordPvP(onlinePlayer, victim);
-			}
-		});
+		if(attacker instanceof Player onlinePlayer) {
+			plugin.recordPvP(onlinePlayer, victim);
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onPlayerIndirectDamage(EntityDamageEvent event) {
+		if(!(event.getEntity() instanceof Player victim) || event instanceof EntityDamageByEntityEvent) {
+			return;
+		}
+
+		//Extend combat tags for delayed damage caused by a recent PvP attack
+		switch(event.getCause()) {
+			case FIRE_TICK, POISON, WITHER, FALL -> plugin.recordIndirectPvP(victim);
+		}
 	}
 
 	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -103,6 +193,9 @@ public class Events implements Listener {
 			return;
 		}
 
+		//Statistics use the last attacker, so must be recorded before clearing
+		plugin.recordDeath(victim);
+		plugin.endDuel(victim);
 		plugin.clearPlayer(victim);
 	}
 
@@ -185,20 +278,76 @@ public class Events implements Listener {
 
 	@EventHandler(ignoreCancelled = true)
 	public void onEntityTarget(EntityTargetLivingEntityEvent event) {
-		if(!(event.getTarget() instanceof Player target) || !(event.getEntity() instanceof Tameable entity)) {
+		//Most retargets are hostile mobs, which are rejected here before any lookups
+		if(!(event.getTarget() instanceof Player target) || !OwnerIndex.isControllable(event.getEntityType())) {
 			return;
 		}
 
-		if(!(entity.getOwner() instanceof Player owner)) {
+		UUID ownerId = ownerIndex.getOwner(event.getEntity());
+		Player owner = ownerId != null ? plugin.getServer().getPlayer(ownerId) : null;
+
+		if(owner == null || owner.equals(target)) {
 			return;
 		}
 
-		//Prevent pets targeting players if PvP isn't allowed
-		if(!plugin.hasPvPEnabled(target) || !plugin.hasPvPEnabled(owner)) {
+		//Prevent player controlled entities targeting players if PvP isn't allowed
+		if(!plugin.canPvP(owner, target)) {
 			event.setCancelled(true);
 		}
 	}
 
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onEntityTame(EntityTameEvent event) {
+		ownerIndex.setOwner(event.getEntity().getUniqueId(), event.getOwner().getUniqueId());
+	}
+
+	@EventHandler
+	public void onEntityRemove(EntityRemoveFromWorldEvent event) {
+		ownerIndex.remove(event.getEntity().getUniqueId());
+	}
+
+	@EventHandler
+	public void onEntitiesLoad(EntitiesLoadEvent event) {
+		ownerIndex.addAll(event.getEntities());
+	}
+
+	@EventHandler
+	public void onEntitiesUnload(EntitiesUnloadEvent event) {
+		ownerIndex.removeAll(event.getEntities());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onPumpkinPlace(BlockPlaceEvent event) {
+		Material type = event.getBlockPlaced().getType();
+
+		if(type != Material.CARVED_PUMPKIN && type != Material.JACK_O_LANTERN) {
+			return;
+		}
+
+		lastPumpkinPlacer = event.getPlayer().getUniqueId();
+		lastPumpkinLocation = event.getBlockPlaced().getLocation();
+		lastPumpkinTick = plugin.getServer().getCurrentTick();
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onGolemBuild(CreatureSpawnEvent event) {
+		if(event.getSpawnReason() != CreatureSpawnEvent.SpawnReason.BUILD_IRONGOLEM || lastPumpkinPlacer == null) {
+			return;
+		}
+
+		//Golems spawn during placement of their pumpkin, so the placer is the builder
+		Location location = event.getLocation();
+
+		if(lastPumpkinTick == plugin.getServer().getCurrentTick()
+				&& location.getWorld().equals(lastPumpkinLocation.getWorld())
+				&& location.distanceSquared(lastPumpkinLocation) <= 9) {
+			event.getEntity().setMetadata("responsible", new FixedMetadataValue(plugin, lastPumpkinPlacer));
+		}
+
+		lastPumpkinPlacer = null;
+		lastPumpkinLocation = null;
+	}
+
 	@EventHandler(ignoreCancelled = true)
 	public void onBlockPlace(BlockPlaceEvent event) {
 		Player player = event.getPlayer();
@@ -0,0 +1,64 @@
+package uk.co.notnull.pvp;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Tracks the last player to attack each player, for a limited time
+ * Used to attribute indirect damage, such as fire ticks, poison or falling, to the PvP fight that caused it.
+ * Entries are kept in expiry order, so expired entries are evicted from the head without scanning.
+ * Must only be used on the main thread.
+ */
+public final class LastAttackerTracker {
+	private record Attack(UUID attacker, long expiresAt) {
+	}
+
+	private final LinkedHashMap<UUID, Attack> attacks = new LinkedHashMap<>();
+
+	/**
+	 * Records an attack, replacing any previous attacker of the victim
+	 * @param victim The victim's UUID
+	 * @param attacker The attacker's UUID
+	 * @param expiresAt The time in milliseconds after which the attack should be forgotten
+	 */
+	public void record(UUID victim, UUID attacker, long expiresAt) {
+		//Remove first so the entry moves to the tail, keeping the map in expiry order
+		attacks.remove(victim);
+		attacks.put(victim, new Attack(attacker, expiresAt));
+	}
+
+	/**
+	 * Returns the last attacker of the given victim, if they were attacked recently enough
+	 * @param victim The victim's UUID
+	 * @param now The current time in milliseconds
+	 * @return The attacker's UUID, or null
+	 */
+	public @Nullable UUID getAttacker(UUID victim, long now) {
+		Attack attack = attacks.get(victim);
+		return attack != null && attack.expiresAt() > now ? attack.attacker() : null;
+	}
+
+	/**
+	 * Forgets the attacker of the given victim
+	 * @param victim The victim's UUID
+	 */
+	public void remove(UUID victim) {
+		attacks.remove(victim);
+	}
+
+	/**
+	 * Removes expired entries
+	 * @param now The current time in milliseconds
+	 */
+	public void evictExpired(long now) {
+		Iterator<Map.Entry<UUID, Attack>> iterator = attacks.entrySet().iterator();
+
+		while(iterator.hasNext() && iterator.next().getValue().expiresAt() <= now) {
+			iterator.remove();
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package uk.co.notnull.pvp;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Measures the time the plugin spends on the main thread each tick, and selects a degradation tier from it
+ * Callers skip or defer non-critical work, such as messages and broadcasts, at higher tiers. Protection decisions
+ * must never depend on the tier. The tier is based on a moving average, and only drops once the average is well
+ * below the threshold, so it does not flap between tiers. Must only be used on the main thread, except for
+ * {@link #getTier()} and {@link #getAverageMillis()}.
+ */
+public final class LoadShedder {
+	private static final double SMOOTHING = 0.05;
+	private static final double RECOVERY_FACTOR = 0.75;
+
+	public enum Tier {
+		/**
+		 * All work is done as normal
+		 */
+		NORMAL,
+		/**
+		 * Non-critical messages are suppressed and proximity scans are cached
+		 */
+		REDUCED,
+		/**
+		 * Expiry and broadcasts are additionally throttled
+		 */
+		CRITICAL
+	}
+
+	private boolean enabled = false;
+	private long reducedNanos;
+	private long criticalNanos;
+	private int proximityCacheTicks = 1;
+	private int flushInterval = 1;
+
+	private long tick = 0;
+	private long tickNanos = 0;
+	private volatile double average = 0;
+	private volatile Tier tier = Tier.NORMAL;
+
+	/**
+	 * Applies the given configuration
+	 * @param config The load-shedding configuration section
+	 */
+	public void configure(@Nullable ConfigurationSection config) {
+		enabled = config != null && config.getBoolean("enabled");
+
+		if(config != null) {
+			reducedNanos = (long) (Math.max(0.1, config.getDouble("reduced-budget")) * 1_000_000);
+			criticalNanos = Math.max(reducedNanos, (long) (config.getDouble("critical-budget") * 1_000_000));
+			proximityCacheTicks = Math.max(1, config.getInt("proximity-cache-ticks"));
+			flushInterval = Math.max(1, config.getInt("flush-interval"));
+		}
+
+		if(!enabled) {
+			tier = Tier.NORMAL;
+		}
+	}
+
+	/**
+	 * Returns the current time, for passing to {@link #stop(long)} once the measured work is done
+	 * @return The start time in nanoseconds
+	 */
+	public long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Adds the time since the given start time to the current tick
+	 * @param start The time returned by {@link #start()}
+	 */
+	public void stop(long start) {
+		tickNanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * Completes the current tick, updating the average and the tier. Must be called once per tick.
+	 */
+	public void endTick() {
+		double average = this.average * (1 - SMOOTHING) + tickNanos * SMOOTHING;
+
+		this.average = average;
+		tickNanos = 0;
+		tick++;
+
+		if(!enabled) {
+			return;
+		}
+
+		Tier target = average >= criticalNanos ? Tier.CRITICAL
+				: average >= reducedNanos ? Tier.REDUCED : Tier.NORMAL;
+
+		if(target.compareTo(tier) >= 0) {
+			tier = target;
+		} else if(average < (tier == Tier.CRITICAL ? criticalNanos : reducedNanos) * RECOVERY_FACTOR) {
+			//Only drop a tier once the average is well below the threshold of the current one
+			tier = target;
+		}
+	}
+
+	/**
+	 * Returns the current tier. Safe to call from any thread.
+	 * @return The tier
+	 */
+	public Tier getTier() {
+		return tier;
+	}
+
+	/**
+	 * Returns whether the current tier is at least the given tier
+	 * @param tier The tier to compare against
+	 * @return Whether work for the given tier should be shed
+	 */
+	public boolean isAtLeast(Tier tier) {
+		return this.tier.compareTo(tier) >= 0;
+	}
+
+	/**
+	 * Returns the moving average of time spent per tick. Safe to call from any thread.
+	 * @return The average in milliseconds
+	 */
+	public double getAverageMillis() {
+		return average / 1_000_000;
+	}
+
+	/**
+	 * Returns the configured budget at which the reduced tier starts
+	 * @return The budget in milliseconds
+	 */
+	public double getBudgetMillis() {
+		return reducedNanos / 1_000_000.0;
+	}
+
+	/**
+	 * Returns the number of ticks completed
+	 * @return The tick count
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * Returns the number of ticks proximity scan results may be reused for
+	 * @return The number of ticks
+	 */
+	public int getProximityCacheTicks() {
+		return proximityCacheTicks;
+	}
+
+	/**
+	 * Returns whether throttled work should run on the current tick
+	 * Always true below the critical tier
+	 * @return Whether to run throttled work
+	 */
+	public boolean shouldFlush() {
+		return tier != Tier.CRITICAL || tick % flushInterval == 0;
+	}
+}
@@ -0,0 +1,61 @@
+package uk.co.notnull.pvp;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In-memory transport, which delivers messages synchronously to every other transport on the same network
+ * Intended for testing sync without a proxy, by creating several transports from one {@link Network}.
+ */
+public final class LoopbackTransport implements SyncTransport {
+	private final Network network;
+	private volatile Consumer<byte[]> receiver = message -> {};
+
+	/**
+	 * A group of loopback transports which can reach each other
+	 */
+	public static final class Network {
+		private final List<LoopbackTransport> transports = new CopyOnWriteArrayList<>();
+
+		/**
+		 * Creates a transport connected to this network
+		 * @return The transport
+		 */
+		public LoopbackTransport createTransport() {
+			LoopbackTransport transport = new LoopbackTransport(this);
+			transports.add(transport);
+			return transport;
+		}
+	}
+
+	private LoopbackTransport(Network network) {
+		this.network = network;
+	}
+
+	@Override
+	public void setReceiver(Consumer<byte[]> receiver) {
+		this.receiver = receiver;
+	}
+
+	@Override
+	public boolean send(byte[] message) {
+		for (LoopbackTransport transport : network.transports) {
+			if(transport != this) {
+				transport.receiver.accept(message.clone());
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean isNetworked() {
+		return network.transports.size() > 1;
+	}
+
+	@Override
+	public void close() {
+		network.transports.remove(this);
+	}
+}
@@ -8,14 +8,68 @@ import net.kyori.adventure.text.minimessage.tag.resolver.TagResolver;
 import org.bukkit.configuration.ConfigurationSection;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 public class Messages {
-    private static ConfigurationSection messages;
+    private static volatile Snapshot snapshot = null;
     public static final MiniMessage miniMessage = MiniMessage.miniMessage();
 
+    /**
+     * Immutable set of messages, swapped out as a whole when messages are changed
+     * Messages are also prepared as components up front, for use when there are no replacements
+     */
+    private record Snapshot(Map<String, String> raw, Map<String, Component> prepared) {
+    }
+
     public static void set(ConfigurationSection messages) {
-        Messages.messages = messages;
+        update(messages);
+    }
+
+    /**
+     * Replaces the current messages with those in the given section
+     * Only messages which differ from the current messages are prepared again
+     * @param messages The new messages
+     * @return The number of messages which were added, changed or removed
+     */
+    public static int update(ConfigurationSection messages) {
+        Snapshot current = snapshot;
+        Map<String, String> raw = new HashMap<>();
+        Map<String, Component> prepared = new HashMap<>();
+        int changed = 0;
+
+        for (String key : messages.getKeys(true)) {
+            if(messages.isConfigurationSection(key)) {
+                continue;
+            }
+
+            String message = messages.getString(key);
+
+            if(message == null) {
+                continue;
+            }
+
+            raw.put(key, message);
+
+            if(current != null && message.equals(current.raw().get(key))) {
+                prepared.put(key, current.prepared().get(key));
+            } else {
+                prepared.put(key, miniMessage.deserialize(message));
+                changed++;
+            }
+        }
+
+        if(current != null) {
+            for (String key : current.raw().keySet()) {
+                if(!raw.containsKey(key)) {
+                    changed++;
+                }
+            }
+        }
+
+        snapshot = new Snapshot(Map.copyOf(raw), Map.copyOf(prepared));
+        return changed;
     }
 
     public static String get(String id) {
@@ -23,16 +77,25 @@ public class Messages {
     }
 
     public static String get(String id, Map<String, String> replacements) {
+        Snapshot messages = snapshot;
+
         if(messages == null) {
             return "";
         }
 
-        String message = messages.getString(id, "Message " + id + " does not exist");
+        Profiling.MessageRenderEvent event = Profiling.beginMessageRender();
+        String message = Objects.requireNonNullElse(messages.raw().get(id), "Message " + id + " does not exist");
 
         for (Map.Entry<String, String> entry : replacements.entrySet()) {
             message = message.replace(entry.getKey(), entry.getValue());
         }
 
+        if(event != null) {
+            event.message = id;
+            event.replacements = replacements.size();
+            Profiling.commit(event);
+        }
+
         return message;
     }
 
@@ -41,11 +104,22 @@ public class Messages {
     }
 
     public static Component getComponent(String id, Map<String, String> stringReplacements, Map<String, ComponentLike> componentReplacmenets) {
+        Snapshot messages = snapshot;
+
         if(messages == null) {
             return Component.empty();
         }
 
-        String message =  messages.getString(id, "Message " + id + " does not exist");
+        if(stringReplacements.isEmpty() && componentReplacmenets.isEmpty()) {
+            Component prepared = messages.prepared().get(id);
+
+            if(prepared != null) {
+                return prepared;
+            }
+        }
+
+        Profiling.MessageRenderEvent event = Profiling.beginMessageRender();
+        String message = Objects.requireNonNullElse(messages.raw().get(id), "Message " + id + " does not exist");
         TagResolver.Builder placeholders = TagResolver.builder();
 
         for (Map.Entry<String, String> entry : stringReplacements.entrySet()) {
@@ -56,7 +130,14 @@ public class Messages {
             placeholders.resolver(Placeholder.component(entry.getKey(), entry.getValue()));
         }
 
-        return miniMessage.deserialize(message, placeholders.build());
+        Component component = miniMessage.deserialize(message, placeholders.build());
+
+        if(event != null) {
+            event.message = id;
+            event.replacements = stringReplacements.size() + componentReplacmenets.size();
+            Profiling.commit(event);
+        }
+
+        return component;
     }
 }
-
@@ -0,0 +1,196 @@
+package uk.co.notnull.pvp;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Local cache of known player names and UUIDs, maintained as players join
+ * Allows offline players to be resolved by name without a profile lookup
+ * All methods are thread safe
+ */
+public final class NameCache {
+	private final Path path;
+	private final Logger logger;
+	private final Map<String, Claim> uuids = new ConcurrentHashMap<>();
+	private final Map<UUID, Entry> names = new ConcurrentHashMap<>();
+	private final Object indexLock = new Object();
+	private volatile boolean dirty = false;
+
+	/**
+	 * A player's last known name, and when they were last seen with it
+	 */
+	private record Entry(String name, long lastSeen) {
+	}
+
+	/**
+	 * The player most recently seen with a name, and when
+	 */
+	private record Claim(UUID uuid, long lastSeen) {
+	}
+
+	public NameCache(Path path, Logger logger) {
+		this.path = path;
+		this.logger = logger;
+	}
+
+	/**
+	 * Records the current name of the given player, replacing any previous name
+	 * @param uuid The player's UUID
+	 * @param name The player's current name
+	 */
+	public void update(UUID uuid, String name) {
+		Entry previous = names.get(uuid);
+
+		if(merge(uuid, new Entry(name, System.currentTimeMillis()))
+				&& (previous == null || !previous.name().equals(name))) {
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Returns the UUID of the player last seen with the given name, if known
+	 * @param name The name, case insensitive
+	 * @return The UUID
+	 */
+	public Optional<UUID> getUUID(String name) {
+		Claim claim = uuids.get(name.toLowerCase(Locale.ROOT));
+
+		if(claim == null) {
+			return Optional.empty();
+		}
+
+		//The player may have since been seen with a different name
+		Entry entry = names.get(claim.uuid());
+		return entry != null && entry.name().equalsIgnoreCase(name) ? Optional.of(claim.uuid()) : Optional.empty();
+	}
+
+	/**
+	 * Returns the last known name of the player with the given UUID, if known
+	 * @param uuid The UUID
+	 * @return The name
+	 */
+	public Optional<String> getName(UUID uuid) {
+		return Optional.ofNullable(names.get(uuid)).map(Entry::name);
+	}
+
+	/**
+	 * Records the given entry, keeping the newest entry for each player and the newest claim on each name
+	 * A name resolves to whichever player was most recently seen with it, and stops resolving to a player once
+	 * they are seen with a different name
+	 * @param uuid The player's UUID
+	 * @param entry The entry
+	 * @return Whether the entry replaced the player's previous entry
+	 */
+	private boolean merge(UUID uuid, Entry entry) {
+		String key = entry.name().toLowerCase(Locale.ROOT);
+
+		synchronized(indexLock) {
+			//Older entries still count as claims on a name, as they show any older claimant has since changed name
+			Claim claim = uuids.get(key);
+
+			if(claim == null || claim.lastSeen() <= entry.lastSeen()) {
+				uuids.put(key, new Claim(uuid, entry.lastSeen()));
+			}
+
+			Entry previous = names.get(uuid);
+
+			if(previous != null && previous.lastSeen() > entry.lastSeen()) {
+				return false;
+			}
+
+			names.put(uuid, entry);
+
+			if(previous != null && !previous.name().equalsIgnoreCase(entry.name())) {
+				Claim previousClaim = uuids.get(previous.name().toLowerCase(Locale.ROOT));
+
+				if(previousClaim != null && previousClaim.uuid().equals(uuid)) {
+					uuids.remove(previous.name().toLowerCase(Locale.ROOT));
+				}
+			}
+
+			return true;
+		}
+	}
+
+	/**
+	 * Loads the cache from disk, merging it with any players recorded since startup
+	 * Lines are in the form "uuid lastSeen name". Lines from older versions without a last seen time are treated
+	 * as older than any other entry
+	 */
+	public void load() {
+		if(!Files.exists(path)) {
+			return;
+		}
+
+		try(BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			String line;
+
+			while((line = reader.readLine()) != null) {
+				String[] parts = line.split(" ", 3);
+
+				if(parts.length < 2) {
+					continue;
+				}
+
+				try {
+					UUID uuid = UUID.fromString(parts[0]);
+					Entry entry = parts.length == 3
+							? new Entry(parts[2], Long.parseLong(parts[1]))
+							: new Entry(parts[1], 0);
+
+					merge(uuid, entry);
+				} catch(IllegalArgumentException e) {
+					logger.warning("Ignoring invalid line in name cache: " + line);
+				}
+			}
+		} catch(IOException e) {
+			logger.log(Level.WARNING, "Failed to load name cache", e);
+		}
+	}
+
+	/**
+	 * Writes the cache to disk if it has changed since it was last saved
+	 */
+	public synchronized void save() {
+		if(!dirty) {
+			return;
+		}
+
+		dirty = false;
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+		try(BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+			for (Map.Entry<UUID, Entry> entry : names.entrySet()) {
+				writer.write(entry.getKey().toString());
+				writer.write(' ');
+				writer.write(Long.toString(entry.getValue().lastSeen()));
+				writer.write(' ');
+				writer.write(entry.getValue().name());
+				writer.newLine();
+			}
+		} catch(IOException e) {
+			dirty = true;
+			logger.log(Level.WARNING, "Failed to save name cache", e);
+			return;
+		}
+
+		try {
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch(IOException e) {
+			dirty = true;
+			logger.log(Level.WARNING, "Failed to replace name cache", e);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package uk.co.notnull.pvp;
+
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.Scoreboard;
+import org.bukkit.scoreboard.Team;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Colours player nametags by PvP state, using scoreboard teams on the main scoreboard
+ * Team membership is only changed when a player's state changes, so no packets are sent while states are stable.
+ * Must only be used on the main thread.
+ */
+public final class NametagTeams {
+	public static final String TEAM_PREFIX = "pvp_";
+
+	public enum State {
+		ENABLED,
+		DISABLED,
+		TAGGED
+	}
+
+	private final Map<State, Team> teams = new EnumMap<>(State.class);
+	private final Map<UUID, State> current = new HashMap<>();
+
+	public NametagTeams(Scoreboard scoreboard, Map<State, String> colours, Logger logger) {
+		for (State state : State.values()) {
+			String name = TEAM_PREFIX + state.name().toLowerCase(Locale.ROOT);
+			Team team = scoreboard.getTeam(name);
+
+			if(team == null) {
+				team = scoreboard.registerNewTeam(name);
+			}
+
+			NamedTextColor colour = NamedTextColor.NAMES.value(colours.getOrDefault(state, "white"));
+
+			if(colour == null) {
+				logger.warning("Invalid nametag colour for " + state + ": " + colours.get(state));
+				colour = NamedTextColor.WHITE;
+			}
+
+			team.color(colour);
+			teams.put(state, team);
+		}
+	}
+
+	/**
+	 * Moves the given player into the team for the given state, if they are not already in it
+	 * @param player The player
+	 * @param state The player's current state
+	 */
+	public void update(Player player, State state) {
+		if(current.put(player.getUniqueId(), state) != state) {
+			//Adding to a team implicitly removes the entry from its previous team
+			teams.get(state).addEntry(player.getName());
+		}
+	}
+
+	/**
+	 * Removes the given player from any nametag team
+	 * @param player The player
+	 */
+	public void remove(Player player) {
+		State state = current.remove(player.getUniqueId());
+
+		if(state != null) {
+			teams.get(state).removeEntry(player.getName());
+		}
+	}
+
+	/**
+	 * Unregisters all nametag teams
+	 */
+	public void unregister() {
+		for (Team team : teams.values()) {
+			try {
+				team.unregister();
+			} catch(IllegalStateException ignored) {
+				//Already unregistered by something else
+			}
+		}
+
+		teams.clear();
+		current.clear();
+	}
+}
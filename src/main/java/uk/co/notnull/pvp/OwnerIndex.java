@@ -0,0 +1,118 @@
+package uk.co.notnull.pvp;
+
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Tameable;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Index from loaded player controllable entities to their owning player, so damage and targeting checks resolve
+ * ownership with a single map probe instead of querying the entity
+ * Tamed entities are indexed as they load and when they are tamed, and removed as they unload or are removed from
+ * the world. Other controllable entities are indexed on first lookup. Owners are stored by UUID rather than player,
+ * so offline owners never need to be looked up. Must only be used on the main thread.
+ */
+public final class OwnerIndex {
+	/**
+	 * Sentinel for entities which are known to have no owner
+	 */
+	private static final UUID NO_OWNER = new UUID(0, 0);
+
+	/**
+	 * Entity types which may be controlled by a player
+	 * Checked before anything else, so that ordinary hostile mobs are rejected by a single bit test
+	 */
+	private static final Set<EntityType> CONTROLLABLE_TYPES = EnumSet.noneOf(EntityType.class);
+
+	static {
+		for (EntityType type : EntityType.values()) {
+			Class<? extends Entity> entityClass = type.getEntityClass();
+
+			if(entityClass != null && Tameable.class.isAssignableFrom(entityClass)) {
+				CONTROLLABLE_TYPES.add(type);
+			}
+		}
+
+		CONTROLLABLE_TYPES.add(EntityType.IRON_GOLEM);
+		CONTROLLABLE_TYPES.add(EntityType.VEX);
+	}
+
+	private final PvP plugin;
+	private final Map<UUID, UUID> owners = new HashMap<>();
+
+	public OwnerIndex(PvP plugin) {
+		this.plugin = plugin;
+	}
+
+	/**
+	 * Returns whether entities of the given type can ever be controlled by a player
+	 * @param type The entity type
+	 * @return Whether the type is controllable
+	 */
+	public static boolean isControllable(EntityType type) {
+		return CONTROLLABLE_TYPES.contains(type);
+	}
+
+	/**
+	 * Returns the UUID of the player controlling the given entity, if any
+	 * @param entity The entity
+	 * @return The owner's UUID, or null
+	 */
+	public @Nullable UUID getOwner(Entity entity) {
+		UUID owner = owners.get(entity.getUniqueId());
+
+		if(owner == null) {
+			owner = plugin.getOwnerId(entity);
+			owners.put(entity.getUniqueId(), owner != null ? owner : NO_OWNER);
+		}
+
+		return owner == NO_OWNER ? null : owner;
+	}
+
+	/**
+	 * Indexes the owners of the given newly loaded entities
+	 * Only tamed entities are indexed here, as other controllable entities are rarely looked up
+	 * @param entities The entities
+	 */
+	public void addAll(Iterable<Entity> entities) {
+		for (Entity entity : entities) {
+			if(entity instanceof Tameable tameable) {
+				UUID owner = tameable.getOwnerUniqueId();
+				owners.put(entity.getUniqueId(), owner != null ? owner : NO_OWNER);
+			}
+		}
+	}
+
+	/**
+	 * Sets the owner of the given entity, such as after it is tamed
+	 * @param entity The entity's UUID
+	 * @param owner The owner's UUID
+	 */
+	public void setOwner(UUID entity, UUID owner) {
+		owners.put(entity, owner);
+	}
+
+	/**
+	 * Removes the given entity from the index
+	 * @param entity The entity's UUID
+	 */
+	public void remove(UUID entity) {
+		owners.remove(entity);
+	}
+
+	/**
+	 * Removes the given unloaded entities from the index
+	 * @param entities The entities
+	 */
+	public void removeAll(Iterable<Entity> entities) {
+		for (Entity entity : entities) {
+			owners.remove(entity.getUniqueId());
+		}
+	}
+}
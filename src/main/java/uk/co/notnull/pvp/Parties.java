@@ -0,0 +1,219 @@
+package uk.co.notnull.pvp;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Player parties, whose members are protected from each other's attacks
+ * Online members have their party id stored in an array indexed by player slot, so checking whether two players
+ * share a party is two slot lookups and an array comparison. Must only be used on the main thread.
+ */
+public final class Parties {
+	private static final int NO_PARTY = 0;
+
+	public enum Result {
+		SUCCESS,
+		ALREADY_IN_PARTY,
+		NOT_IN_PARTY,
+		NO_INVITE,
+		PARTY_FULL
+	}
+
+	public static final class Party {
+		private final int id;
+		private UUID leader;
+		private final Set<UUID> members = new LinkedHashSet<>();
+		private final Set<UUID> invites = new HashSet<>();
+
+		private Party(int id, UUID leader) {
+			this.id = id;
+			this.leader = leader;
+			this.members.add(leader);
+		}
+
+		public UUID getLeader() {
+			return leader;
+		}
+
+		public Set<UUID> getMembers() {
+			return Collections.unmodifiableSet(members);
+		}
+	}
+
+	private final PlayerSlots slots;
+	private final Map<UUID, Party> memberParties = new HashMap<>();
+	private final Int2ObjectOpenHashMap<Party> parties = new Int2ObjectOpenHashMap<>();
+	private int[] groupIds = new int[64];
+	private int nextId = 1;
+
+	public Parties(PlayerSlots slots) {
+		this.slots = slots;
+	}
+
+	/**
+	 * Returns whether the given players are members of the same party
+	 * Both players must be online
+	 * @param player1 The first player's UUID
+	 * @param player2 The second player's UUID
+	 * @return Whether they share a party
+	 */
+	public boolean areAllies(UUID player1, UUID player2) {
+		int slot1 = slots.get(player1);
+		int slot2 = slots.get(player2);
+
+		if(slot1 == PlayerSlots.NO_SLOT || slot2 == PlayerSlots.NO_SLOT) {
+			return false;
+		}
+
+		int group = getGroupId(slot1);
+		return group != NO_PARTY && group == getGroupId(slot2);
+	}
+
+	/**
+	 * Returns the party of the given player, if any
+	 * @param uuid The player's UUID
+	 * @return The party, or null
+	 */
+	public @Nullable Party getParty(UUID uuid) {
+		return memberParties.get(uuid);
+	}
+
+	/**
+	 * Invites a player to the inviter's party, creating a party if the inviter is not in one
+	 * @param inviter The inviting player's UUID
+	 * @param invitee The invited player's UUID
+	 * @param maxSize The maximum party size, or 0 for no limit
+	 * @return The result
+	 */
+	public Result invite(UUID inviter, UUID invitee, int maxSize) {
+		if(memberParties.containsKey(invitee)) {
+			return Result.ALREADY_IN_PARTY;
+		}
+
+		Party party = memberParties.get(inviter);
+
+		if(party == null) {
+			party = new Party(nextId++, inviter);
+			parties.put(party.id, party);
+			setMember(inviter, party);
+		}
+
+		if(isFull(party, maxSize)) {
+			return Result.PARTY_FULL;
+		}
+
+		party.invites.add(invitee);
+		return Result.SUCCESS;
+	}
+
+	/**
+	 * Accepts an invite to the party of the given member
+	 * @param player The accepting player's UUID
+	 * @param member The UUID of any member of the party
+	 * @param maxSize The maximum party size, or 0 for no limit
+	 * @return The result
+	 */
+	public Result join(UUID player, UUID member, int maxSize) {
+		if(memberParties.containsKey(player)) {
+			return Result.ALREADY_IN_PARTY;
+		}
+
+		Party party = memberParties.get(member);
+
+		if(party == null || !party.invites.remove(player)) {
+			return Result.NO_INVITE;
+		}
+
+		if(isFull(party, maxSize)) {
+			return Result.PARTY_FULL;
+		}
+
+		party.members.add(player);
+		setMember(player, party);
+		return Result.SUCCESS;
+	}
+
+	/**
+	 * Removes the given player from their party
+	 * The party is disbanded if no members remain, otherwise leadership passes to the next member
+	 * @param player The leaving player's UUID
+	 * @return The result
+	 */
+	public Result leave(UUID player) {
+		Party party = memberParties.remove(player);
+
+		if(party == null) {
+			return Result.NOT_IN_PARTY;
+		}
+
+		party.members.remove(player);
+		setGroupId(player, NO_PARTY);
+
+		if(party.members.isEmpty()) {
+			parties.remove(party.id);
+		} else if(party.leader.equals(player)) {
+			party.leader = party.members.iterator().next();
+		}
+
+		return Result.SUCCESS;
+	}
+
+	/**
+	 * Restores the given player's party membership into their slot, which must already have been assigned
+	 * @param uuid The joining player's UUID
+	 */
+	public void onJoin(UUID uuid) {
+		int slot = slots.get(uuid);
+
+		if(slot == PlayerSlots.NO_SLOT) {
+			return;
+		}
+
+		Party party = memberParties.get(uuid);
+
+		ensureCapacity(slot);
+		groupIds[slot] = party != null ? party.id : NO_PARTY;
+	}
+
+	/**
+	 * Clears the given player's slot, before it is released. Their party membership is kept for if they rejoin.
+	 * @param uuid The leaving player's UUID
+	 */
+	public void onQuit(UUID uuid) {
+		int slot = slots.get(uuid);
+
+		if(slot != PlayerSlots.NO_SLOT) {
+			groupIds[slot] = NO_PARTY;
+		}
+	}
+
+	private static boolean isFull(Party party, int maxSize) {
+		return maxSize > 0 && party.members.size() >= maxSize;
+	}
+
+	private void setMember(UUID uuid, Party party) {
+		memberParties.put(uuid, party);
+		setGroupId(uuid, party.id);
+	}
+
+	private void setGroupId(UUID uuid, int group) {
+		int slot = slots.get(uuid);
+
+		if(slot != PlayerSlots.NO_SLOT) {
+			ensureCapacity(slot);
+			groupIds[slot] = group;
+		}
+	}
+
+	private int getGroupId(int slot) {
+		return slot < groupIds.length ? groupIds[slot] : NO_PARTY;
+	}
+
+	private void ensureCapacity(int slot) {
+		if(slot >= groupIds.length) {
+			groupIds = Arrays.copyOf(groupIds, Math.max(slot + 1, groupIds.length * 2));
+		}
+	}
+}
@@ -28,6 +28,8 @@ import me.clip.placeholderapi.expansion.Relational;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Locale;
+
 /**
  * This class will be registered through the register-method in the
  * plugins onEnable-method.
@@ -123,6 +125,10 @@ public class Placeholders extends PlaceholderExpansion implements Relational {
      */
     @Override
     public String onPlaceholderRequest(Player player, @NotNull String identifier) {
+        if(identifier.startsWith("top_")) {
+            return getTopPlaceholder(identifier);
+        }
+
         if(player == null) {
             return "";
         }
@@ -143,6 +149,68 @@ public class Placeholders extends PlaceholderExpansion implements Relational {
             return "disabled";
         }
 
+        if(identifier.equals("zone")) {
+            return plugin.getZoneMode(player.getLocation()).name().toLowerCase(Locale.ROOT);
+        }
+
+        PvPStats stats = plugin.getStats();
+
+        if(stats != null) {
+            PvPStats.PlayerStats playerStats = stats.get(player.getUniqueId());
+
+            switch(identifier) {
+                case "kills":
+                    return String.valueOf(playerStats != null ? playerStats.getKills() : 0);
+                case "deaths":
+                    return String.valueOf(playerStats != null ? playerStats.getDeaths() : 0);
+                case "streak":
+                    return String.valueOf(playerStats != null ? playerStats.getStreak() : 0);
+                case "best_streak":
+                    return String.valueOf(playerStats != null ? playerStats.getBestStreak() : 0);
+                case "punishments":
+                    return String.valueOf(playerStats != null ? playerStats.getPunishments() : 0);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Handles the %pvp_top_<n>_name% and %pvp_top_<n>_kills% placeholders
+     * These are read from the cached top positions, so are cheap enough to be polled frequently
+     *
+     * @param  identifier
+     *         A String containing the identifier/value.
+     *
+     * @return possibly-null String of the requested identifier.
+     */
+    private String getTopPlaceholder(String identifier) {
+        PvPStats stats = plugin.getStats();
+        int separator = identifier.indexOf('_', 4);
+
+        if(stats == null || separator < 0) {
+            return null;
+        }
+
+        int position;
+
+        try {
+            position = Integer.parseInt(identifier.substring(4, separator));
+        } catch(NumberFormatException e) {
+            return null;
+        }
+
+        PvPStats.TopEntry entry = stats.getTop(position);
+        String value = identifier.substring(separator + 1);
+
+        if(value.equals("name")) {
+            return entry != null ? plugin.getNameCache().getName(entry.uuid()).orElse("") : "";
+        }
+
+        if(value.equals("kills")) {
+            return entry != null ? String.valueOf(entry.kills()) : "";
+        }
+
         return null;
     }
 
@@ -153,8 +221,8 @@ public class Placeholders extends PlaceholderExpansion implements Relational {
         }
 
         if(identifier.equals("can_pvp")) {
-            return String.valueOf(!player1.equals(player2)
-                    && plugin.hasPvPEnabled(player1) && plugin.hasPvPEnabled(player2));
+            //Placeholders may be requested asynchronously, where duels and allies cannot be safely checked
+            return String.valueOf(plugin.canPvP(player1, player2, plugin.getServer().isPrimaryThread()));
         }
 
         if(identifier.equals("status")) {
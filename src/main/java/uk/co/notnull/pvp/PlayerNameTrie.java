@@ -0,0 +1,149 @@
+package uk.co.notnull.pvp;
+
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * Prefix trie of online player names, for tab completion
+ * Lookups only visit players whose names start with the typed prefix, instead of every online player. Names are
+ * matched case-insensitively. Updated on the main thread as players join and leave, and safe to read from the async
+ * completion thread.
+ */
+public final class PlayerNameTrie {
+	private static final class Node {
+		private final Map<Character, Node> children = new HashMap<>(4);
+		private Player player;
+		private int size = 0;
+	}
+
+	private final Node root = new Node();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Adds the given player, replacing any player with the same name
+	 * @param player The player
+	 */
+	public void add(Player player) {
+		String key = player.getName().toLowerCase(Locale.ROOT);
+
+		lock.writeLock().lock();
+
+		try {
+			Node node = root;
+
+			for (int i = 0; i < key.length(); i++) {
+				node = node.children.computeIfAbsent(key.charAt(i), c -> new Node());
+			}
+
+			boolean added = node.player == null;
+			node.player = player;
+
+			if(added) {
+				adjustSizes(key, 1);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the given player, pruning any branches which become empty
+	 * @param player The player
+	 */
+	public void remove(Player player) {
+		String key = player.getName().toLowerCase(Locale.ROOT);
+
+		lock.writeLock().lock();
+
+		try {
+			Node node = find(key);
+
+			if(node == null || node.player == null) {
+				return;
+			}
+
+			node.player = null;
+			adjustSizes(key, -1);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the names of players whose names start with the given prefix and who match the given filter
+	 * @param prefix The prefix, matched case-insensitively
+	 * @param filter The filter, which is called while the trie is locked so must not modify it
+	 * @param limit The maximum number of names to return
+	 * @return The matching names
+	 */
+	public List<String> complete(String prefix, Predicate<Player> filter, int limit) {
+		List<String> names = new ArrayList<>();
+
+		lock.readLock().lock();
+
+		try {
+			Node node = find(prefix.toLowerCase(Locale.ROOT));
+
+			if(node != null) {
+				collect(node, filter, limit, names);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return names;
+	}
+
+	private Node find(String key) {
+		Node node = root;
+
+		for (int i = 0; i < key.length() && node != null; i++) {
+			node = node.children.get(key.charAt(i));
+		}
+
+		return node;
+	}
+
+	private void adjustSizes(String key, int change) {
+		Node node = root;
+		node.size += change;
+
+		for (int i = 0; i < key.length(); i++) {
+			Node child = node.children.get(key.charAt(i));
+			child.size += change;
+
+			if(child.size == 0) {
+				node.children.remove(key.charAt(i));
+				return;
+			}
+
+			node = child;
+		}
+	}
+
+	private static void collect(Node node, Predicate<Player> filter, int limit, List<String> names) {
+		if(names.size() >= limit) {
+			return;
+		}
+
+		if(node.player != null && filter.test(node.player)) {
+			names.add(node.player.getName());
+		}
+
+		for (Node child : node.children.values()) {
+			if(names.size() >= limit) {
+				return;
+			}
+
+			collect(child, filter, limit, names);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package uk.co.notnull.pvp;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.UUID;
+
+/**
+ * Assigns each online player a small integer slot, for use as an index into compact per-player arrays
+ * Slots are reused after players leave, so the highest slot is bounded by the peak number of online players.
+ * Must only be used on the main thread.
+ */
+public final class PlayerSlots {
+	public static final int NO_SLOT = -1;
+
+	private final Object2IntOpenHashMap<UUID> slots = new Object2IntOpenHashMap<>();
+	private final IntArrayList free = new IntArrayList();
+	private int next = 0;
+
+	public PlayerSlots() {
+		slots.defaultReturnValue(NO_SLOT);
+	}
+
+	/**
+	 * Assigns a slot to the given player, or returns their existing slot
+	 * @param uuid The player's UUID
+	 * @return The slot
+	 */
+	public int assign(UUID uuid) {
+		int slot = slots.getInt(uuid);
+
+		if(slot == NO_SLOT) {
+			slot = free.isEmpty() ? next++ : free.popInt();
+			slots.put(uuid, slot);
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Releases the slot of the given player, allowing it to be reused
+	 * @param uuid The player's UUID
+	 * @return The released slot, or {@link #NO_SLOT} if the player had no slot
+	 */
+	public int release(UUID uuid) {
+		int slot = slots.removeInt(uuid);
+
+		if(slot != NO_SLOT) {
+			free.push(slot);
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Returns the slot of the given player
+	 * @param uuid The player's UUID
+	 * @return The slot, or {@link #NO_SLOT} if the player has no slot
+	 */
+	public int get(UUID uuid) {
+		return slots.getInt(uuid);
+	}
+}
@@ -0,0 +1,114 @@
+package uk.co.notnull.pvp;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.messaging.PluginMessageListener;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Transport using the BungeeCord plugin messaging channel, which is also supported by Velocity
+ * Messages are forwarded by the proxy to all other servers. Plugin messages are sent through a connected player,
+ * so messages cannot be sent while the server is empty, and are only received by servers with players online.
+ */
+public final class PluginMessageTransport implements SyncTransport, PluginMessageListener {
+	private static final String CHANNEL = "BungeeCord";
+	private static final String SUBCHANNEL = "PvPSync";
+
+	private final Plugin plugin;
+	private final Logger logger;
+	private final boolean networked;
+	private Consumer<byte[]> receiver = message -> {};
+
+	public PluginMessageTransport(Plugin plugin) {
+		this.plugin = plugin;
+		this.logger = plugin.getLogger();
+		this.networked = isBehindProxy();
+
+		if(!networked) {
+			logger.warning("Sync is enabled but this server does not appear to be behind a proxy");
+		}
+
+		plugin.getServer().getMessenger().registerOutgoingPluginChannel(plugin, CHANNEL);
+		plugin.getServer().getMessenger().registerIncomingPluginChannel(plugin, CHANNEL, this);
+	}
+
+	@Override
+	public void setReceiver(Consumer<byte[]> receiver) {
+		this.receiver = receiver;
+	}
+
+	@Override
+	public boolean send(byte[] message) {
+		Iterator<? extends Player> players = plugin.getServer().getOnlinePlayers().iterator();
+
+		if(!players.hasNext()) {
+			return false;
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(message.length + 32);
+
+		try(DataOutputStream output = new DataOutputStream(bytes)) {
+			output.writeUTF("Forward");
+			output.writeUTF("ALL");
+			output.writeUTF(SUBCHANNEL);
+			output.writeShort(message.length);
+			output.write(message);
+		} catch(IOException e) {
+			logger.log(Level.WARNING, "Failed to write sync message", e);
+			return true;
+		}
+
+		players.next().sendPluginMessage(plugin, CHANNEL, bytes.toByteArray());
+		return true;
+	}
+
+	@Override
+	public boolean isNetworked() {
+		return networked;
+	}
+
+	@Override
+	public void onPluginMessageReceived(@NotNull String channel, @NotNull Player player, byte @NotNull [] message) {
+		if(!channel.equals(CHANNEL)) {
+			return;
+		}
+
+		try(DataInputStream input = new DataInputStream(new ByteArrayInputStream(message))) {
+			if(!input.readUTF().equals(SUBCHANNEL)) {
+				return;
+			}
+
+			byte[] data = new byte[input.readUnsignedShort()];
+			input.readFully(data);
+			receiver.accept(data);
+		} catch(IOException e) {
+			logger.log(Level.WARNING, "Received malformed sync message", e);
+		}
+	}
+
+	@Override
+	public void close() {
+		plugin.getServer().getMessenger().unregisterIncomingPluginChannel(plugin, CHANNEL, this);
+		plugin.getServer().getMessenger().unregisterOutgoingPluginChannel(plugin, CHANNEL);
+	}
+
+	private static boolean isBehindProxy() {
+		//BungeeCord forwarding is set in spigot.yml, and Velocity forwarding in Paper's global config
+		YamlConfiguration spigot = YamlConfiguration.loadConfiguration(new File("spigot.yml"));
+		YamlConfiguration paper = YamlConfiguration.loadConfiguration(new File("config", "paper-global.yml"));
+
+		return spigot.getBoolean("settings.bungeecord") || paper.getBoolean("proxies.velocity.enabled");
+	}
+}
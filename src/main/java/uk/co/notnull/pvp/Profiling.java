@@ -0,0 +1,213 @@
+package uk.co.notnull.pvp;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.bukkit.configuration.ConfigurationSection;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Java Flight Recorder events for the plugin's main work, so tick spikes can be correlated with it in recordings
+ * Events are only created when profiling is enabled in the config, and are then only committed if they took at
+ * least their configured threshold and are enabled in the active recording. When profiling is disabled the cost is
+ * a single volatile read per call site.
+ */
+final class Profiling {
+	enum Kind {
+		ATTEMPT("attempt"),
+		NEARBY_SCAN("nearby-scan"),
+		ATTRIBUTION("attribution"),
+		MESSAGE("message"),
+		PERSISTENCE("persistence");
+
+		private final String configKey;
+
+		Kind(String configKey) {
+			this.configKey = configKey;
+		}
+	}
+
+	//Thresholds in nanoseconds indexed by kind, or null if profiling is disabled
+	private static volatile long[] thresholds = null;
+
+	private Profiling() {
+	}
+
+	/**
+	 * Applies the given configuration
+	 * @param config The profiling configuration section
+	 */
+	static void configure(@Nullable ConfigurationSection config) {
+		if(config == null || !config.getBoolean("enabled")) {
+			thresholds = null;
+			return;
+		}
+
+		long[] thresholds = new long[Kind.values().length];
+
+		for (Kind kind : Kind.values()) {
+			thresholds[kind.ordinal()] = Math.max(0, config.getLong("thresholds." + kind.configKey)) * 1000;
+		}
+
+		Profiling.thresholds = thresholds;
+	}
+
+	/**
+	 * Starts an event for a PvP attempt decision, if profiling is enabled
+	 * @return The started event, or null
+	 */
+	static @Nullable AttemptEvent beginAttempt() {
+		return thresholds != null ? begin(Kind.ATTEMPT, new AttemptEvent()) : null;
+	}
+
+	/**
+	 * Starts an event for a nearby player scan, if profiling is enabled
+	 * @return The started event, or null
+	 */
+	static @Nullable NearbyScanEvent beginNearbyScan() {
+		return thresholds != null ? begin(Kind.NEARBY_SCAN, new NearbyScanEvent()) : null;
+	}
+
+	/**
+	 * Starts an event for an attribution resolution, if profiling is enabled
+	 * @return The started event, or null
+	 */
+	static @Nullable AttributionEvent beginAttribution() {
+		return thresholds != null ? begin(Kind.ATTRIBUTION, new AttributionEvent()) : null;
+	}
+
+	/**
+	 * Starts an event for a message render, if profiling is enabled
+	 * @return The started event, or null
+	 */
+	static @Nullable MessageRenderEvent beginMessageRender() {
+		return thresholds != null ? begin(Kind.MESSAGE, new MessageRenderEvent()) : null;
+	}
+
+	/**
+	 * Starts an event for loading or saving PvP states, if profiling is enabled
+	 * @param operation The operation being performed
+	 * @return The started event, or null
+	 */
+	static @Nullable PersistenceEvent beginPersistence(String operation) {
+		PersistenceEvent event = thresholds != null ? begin(Kind.PERSISTENCE, new PersistenceEvent()) : null;
+
+		if(event != null) {
+			event.operation = operation;
+		}
+
+		return event;
+	}
+
+	private static <T extends TimedEvent> T begin(Kind kind, T event) {
+		event.kind = kind;
+		event.startNanos = System.nanoTime();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends the given event, and commits it if it took at least its configured threshold
+	 * @param event The event, which may be null if profiling was disabled when it would have started
+	 */
+	static void commit(@Nullable TimedEvent event) {
+		if(event == null) {
+			return;
+		}
+
+		event.end();
+
+		long[] thresholds = Profiling.thresholds;
+
+		if(thresholds != null && System.nanoTime() - event.startNanos >= thresholds[event.kind.ordinal()]
+				&& event.shouldCommit()) {
+			event.commit();
+		}
+	}
+
+	/**
+	 * Base class for all plugin events, holding the state needed to apply the configured threshold
+	 * Transient fields are not recorded.
+	 */
+	@Category({"PvP"})
+	@StackTrace(false)
+	abstract static class TimedEvent extends Event {
+		transient Kind kind;
+		transient long startNanos;
+	}
+
+	@Name("uk.co.notnull.pvp.Attempt")
+	@Label("PvP Attempt")
+	@Description("A decision on whether one player may damage another")
+	static final class AttemptEvent extends TimedEvent {
+		@Label("Attacker")
+		String attacker;
+
+		@Label("Victim")
+		String victim;
+
+		@Label("Allowed")
+		boolean allowed;
+
+		@Label("Reason")
+		String reason;
+	}
+
+	@Name("uk.co.notnull.pvp.NearbyScan")
+	@Label("Nearby Player Scan")
+	@Description("A search for protected players near a location, such as for lava or fire placement")
+	static final class NearbyScanEvent extends TimedEvent {
+		@Label("World")
+		String world;
+
+		@Label("Range")
+		int range;
+
+		@Label("Candidates")
+		@Description("Players considered before distance and protection checks")
+		int candidates;
+
+		@Label("Protected")
+		int protectedPlayers;
+
+		@Label("Cached")
+		@Description("Whether the candidates came from the load shedding cache")
+		boolean cached;
+	}
+
+	@Name("uk.co.notnull.pvp.Attribution")
+	@Label("Damage Attribution")
+	@Description("Resolution of the player responsible for an entity")
+	static final class AttributionEvent extends TimedEvent {
+		@Label("Entity Type")
+		String entityType;
+
+		@Label("Resolved")
+		boolean resolved;
+	}
+
+	@Name("uk.co.notnull.pvp.MessageRender")
+	@Label("Message Render")
+	@Description("Rendering of a configured message with replacements")
+	static final class MessageRenderEvent extends TimedEvent {
+		@Label("Message")
+		String message;
+
+		@Label("Replacements")
+		int replacements;
+	}
+
+	@Name("uk.co.notnull.pvp.Persistence")
+	@Label("PvP State Persistence")
+	@Description("Loading or saving of stored PvP states")
+	static final class PersistenceEvent extends TimedEvent {
+		@Label("Operation")
+		String operation;
+
+		@Label("Players")
+		int players;
+	}
+}
@@ -1,10 +1,12 @@
 package uk.co.notnull.pvp;
 
 import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.ComponentLike;
 import org.bukkit.GameMode;
 import org.bukkit.Location;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.configuration.Configuration;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.MemoryConfiguration;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
@@ -13,23 +15,77 @@ import org.bukkit.event.Listener;
 import org.bukkit.metadata.MetadataValue;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.potion.PotionEffectType;
+import org.bukkit.scoreboard.Team;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
 import java.util.stream.Collectors;
 
 public final class PvP extends JavaPlugin implements Listener {
 
-	private Configuration config;
-    private final List<UUID> pvpEnabled = new ArrayList<>();
-	private final Map<Player, Instant> lastDamage = new HashMap<>();
+	private volatile Configuration config;
+	private final Set<UUID> pvpEnabled = ConcurrentHashMap.newKeySet();
+	private final Map<UUID, Instant> lastDamage = new HashMap<>();
 	private final Map<Player, Instant> lastMessage = new HashMap<>();
 	private final Map<UUID, Instant> lastToggle = new HashMap<>();
+	private final LastAttackerTracker lastAttackers = new LastAttackerTracker();
+	private final PlayerSlots playerSlots = new PlayerSlots();
+	private final Parties parties = new Parties(playerSlots);
+	private final Duels duels = new Duels(playerSlots);
+	private final PlayerNameTrie playerNames = new PlayerNameTrie();
+	private final LoadShedder loadShedder = new LoadShedder();
+	private final Map<ProximityKey, List<Player>> proximityCache = new HashMap<>();
+	private final Map<UUID, Boolean> pendingBroadcasts = new LinkedHashMap<>();
 	private Placeholders placeholders;
+	private volatile ZoneRules zoneRules = ZoneRules.EMPTY;
+	private CombatJournal journal;
+	private NameCache nameCache;
+	private ConfigWatcher configWatcher;
+	private PvPStats stats;
+	private volatile AuditLog auditLog;
+	private NametagTeams nametags;
+	private StateSync sync;
+	private final Map<UUID, Instant> pendingPunishments = new HashMap<>();
+	private volatile PvPStateStore stateStore;
+	private final Set<UUID> residentPlayers = ConcurrentHashMap.newKeySet();
+	private final Map<UUID, PreloadedState> preloadedStates = new ConcurrentHashMap<>();
+	private final Map<UUID, Long> evictions = new HashMap<>();
+	private final Map<UUID, Long> pendingReads = new HashMap<>();
+	private long lastReadId = 0;
+
+	public enum BulkAction {
+		TOGGLE,
+		ENABLE,
+		DISABLE
+	}
+
+	public enum ListFilter {
+		ENABLED,
+		DISABLED,
+		TAGGED
+	}
+
+	public record BulkResult(int enabled, int disabled) {
+	}
+
+	private record ProximityKey(UUID world, int x, int y, int z, int range) {
+	}
+
+	private record PreloadedState(@Nullable Boolean enabled, long loadedAt) {
+	}
+
+	private static final long PRELOAD_TIMEOUT_MILLIS = 60000;
 
 	public static final List<PotionEffectType> positiveEffects = List.of(
 			PotionEffectType.ABSORPTION,
@@ -57,24 +113,74 @@ public final class PvP extends JavaPlugin implements Listener {
 		// Plugin startup logic
 		getServer().getPluginManager().registerEvents(new Events(this), this);
 		initConfig();
+		updateConfigWatcher();
 		loadPvPStates();
+		initJournal();
+		initNameCache();
+		initStats();
+		initAuditLog();
+		initNametags();
+		initSync();
+
+		for (Player player : getServer().getOnlinePlayers()) {
+			handleJoin(player);
+		}
 
 		new Commands(this);
 
 		getServer().getScheduler().scheduleSyncRepeatingTask(this, () -> {
-			Iterator<Player> iterator = lastDamage.keySet().iterator();
+			long start = loadShedder.start();
+			long now = System.currentTimeMillis();
+
+			//Combat tags are checked against their time when it matters, so expiring them late is only cosmetic
+			if(loadShedder.shouldFlush()) {
+				Iterator<Map.Entry<UUID, Instant>> iterator = lastDamage.entrySet().iterator();
 
-			while (iterator.hasNext()) {
-				Player player = iterator.next();
+				while (iterator.hasNext()) {
+					Map.Entry<UUID, Instant> entry = iterator.next();
 
-				if(getRemainingPvPCooldown(player) == 0) {
-					player.sendMessage(Messages.getComponent("safe-to-leave"));
-					iterator.remove();
+					if(getRemainingCooldown(entry.getValue()) == 0) {
+						Player player = getServer().getPlayer(entry.getKey());
+
+						iterator.remove();
+
+						if(sync != null) {
+							sync.forgetTag(entry.getKey());
+						}
+
+						if(player != null) {
+							player.sendMessage(Messages.getComponent("safe-to-leave"));
+							updateNametag(player);
+						}
+					}
 				}
+
+				lastAttackers.evictExpired(now);
+				flushBroadcasts();
+			}
+
+			//Duels grant PvP, so must always end on time
+			for (Duels.Duel duel : duels.expire(now)) {
+				notifyDuelEnded(duel, "duel-expired");
+			}
+
+			loadShedder.stop(start);
+			loadShedder.endTick();
+
+			if(!proximityCache.isEmpty() && loadShedder.getTick() % loadShedder.getProximityCacheTicks() == 0) {
+				proximityCache.clear();
 			}
 		}, 1L, 1L);
 
 		getServer().getScheduler().scheduleSyncRepeatingTask(this, this::savePvPStates, 300L, 300L);
+		getServer().getScheduler().scheduleSyncRepeatingTask(this, () -> {
+			Runnable save = stats != null ? stats.prepareSave() : null;
+
+			if(save != null) {
+				getServer().getScheduler().runTaskAsynchronously(this, save);
+			}
+		}, 300L, 300L);
+		getServer().getScheduler().runTaskTimerAsynchronously(this, nameCache::save, 300L, 300L);
 
 		if(getServer().getPluginManager().isPluginEnabled("PlaceholderAPI")) {
 			placeholders = new Placeholders(this);
@@ -85,6 +191,39 @@ public final class PvP extends JavaPlugin implements Listener {
 	@Override
 	public void onDisable() {
 		savePvPStates();
+		nameCache.save();
+
+		if(stats != null) {
+			Runnable save = stats.prepareSave();
+
+			if(save != null) {
+				save.run();
+			}
+		}
+
+		if(configWatcher != null) {
+			configWatcher.stop();
+		}
+
+		if(journal != null) {
+			journal.close();
+		}
+
+		if(auditLog != null) {
+			auditLog.close();
+		}
+
+		if(nametags != null) {
+			nametags.unregister();
+		}
+
+		if(sync != null) {
+			sync.close();
+		}
+
+		if(stateStore != null) {
+			stateStore.close();
+		}
 
 		if(placeholders != null) {
 			placeholders.unregister();
@@ -93,7 +232,32 @@ public final class PvP extends JavaPlugin implements Listener {
 
 	public void initConfig() {
 		config = getConfig();
+		saveDefaultConfig();
+
+		//Compile before swapping, so lookups never see a partially built rule set
+		zoneRules = compileConfig(config);
+		loadShedder.configure(config.getConfigurationSection("load-shedding"));
+		Profiling.configure(config.getConfigurationSection("profiling"));
+
+		if(!new File(getDataFolder(), "data.yml").exists()) {
+			saveResource("data.yml", false);
+		}
+
+		if(!new File(getDataFolder(), "messages.yml").exists()) {
+			saveResource("messages.yml", false);
+		}
+
+		Configuration messages = YamlConfiguration.loadConfiguration(new File(getDataFolder(), "messages.yml"));
+		Messages.set(messages);
+	}
 
+	/**
+	 * Applies defaults to the given config and compiles its zone rules
+	 * Does not modify any plugin state, so may be called from any thread
+	 * @param config The config
+	 * @return The compiled zone rules
+	 */
+	private ZoneRules compileConfig(Configuration config) {
 		Configuration defaults = new MemoryConfiguration();
 
 		defaults.addDefault("pvp-timeout", 30);
@@ -101,19 +265,186 @@ public final class PvP extends JavaPlugin implements Listener {
 				"The number of seconds that must pass without a player giving or receiving PvP damage,",
 				"in order that player to be able to leave the server without punishment."));
 
+		defaults.createSection("zones.worlds");
+		defaults.createSection("zones.regions");
+		defaults.setComments("zones", List.of(
+				"Zone rules which override player PvP states.",
+				"Modes are default (use player states), forced-on (PvP always allowed) or forced-off (PvP never allowed).",
+				"worlds sets the mode for a whole world, regions sets the mode for a cuboid within a world.",
+				"Overlapping regions are resolved by their priority, highest first."));
+
+		defaults.addDefault("indirect-damage-window", 10);
+		defaults.setComments("indirect-damage-window", List.of(
+				"The number of seconds after being attacked by a player, during which indirect damage such as",
+				"fire, poison, wither or fall damage is attributed to that player and extends the PvP timeout."));
+
+		defaults.addDefault("stats.enabled", true);
+		defaults.addDefault("stats.leaderboard-size", 10);
+		defaults.setComments("stats", List.of(
+				"PvP kill, death, streak and punishment statistics.",
+				"leaderboard-size is the number of top positions available to placeholders.",
+				"Changes to these settings require a restart."));
+
+		defaults.addDefault("parties.max-size", 0);
+		defaults.addDefault("parties.scoreboard-teams", false);
+		defaults.setComments("parties", List.of(
+				"Members of the same party cannot harm each other, regardless of their PvP states.",
+				"max-size is the maximum number of members in a party, or 0 for no limit.",
+				"scoreboard-teams additionally treats players on the same scoreboard team as party members."));
+
+		defaults.addDefault("duels.duration", 300);
+		defaults.addDefault("duels.request-timeout", 60);
+		defaults.setComments("duels", List.of(
+				"Duels allow PvP between two players who have agreed to it, regardless of their PvP states.",
+				"duration is the number of seconds a duel lasts, unless one of the players dies or leaves first.",
+				"request-timeout is the number of seconds a duel request can be accepted for."));
+
+		defaults.addDefault("nametags.enabled", false);
+		defaults.addDefault("nametags.enabled-colour", "red");
+		defaults.addDefault("nametags.disabled-colour", "green");
+		defaults.addDefault("nametags.tagged-colour", "gold");
+		defaults.setComments("nametags", List.of(
+				"Colours player nametags by PvP state, using scoreboard teams on the main scoreboard.",
+				"Colours are named text colours, such as red, green or gold.",
+				"Changes to these settings require a restart."));
+
+		defaults.addDefault("audit.enabled", false);
+		defaults.addDefault("audit.buffer-size", 8192);
+		defaults.addDefault("audit.max-file-size", 10240);
+		defaults.addDefault("audit.rotate-interval", 3600);
+		defaults.setComments("audit", List.of(
+				"Audit log of toggles, allowed and cancelled PvP attempts, combat tags and punishments.",
+				"Logs are written to gzip files in the audit folder.",
+				"buffer-size is the number of records which can be waiting to be written. Records are dropped if it fills.",
+				"max-file-size is the size in KB, and rotate-interval the number of seconds, after which a new file is started.",
+				"Changes to these settings require a restart."));
+
+		defaults.addDefault("journal.enabled", true);
+		defaults.addDefault("journal.flush-interval", 1000);
+		defaults.addDefault("journal.compact-interval", 300);
+		defaults.setComments("journal", List.of(
+				"Journal of combat tags, toggle cooldowns and pending punishments, allowing them to survive restarts and crashes.",
+				"flush-interval is the number of milliseconds between batched writes.",
+				"compact-interval is the number of seconds between rewrites of the journal, discarding expired entries.",
+				"Changes to these settings require a restart."));
+
+		defaults.addDefault("storage.lazy-loading", false);
+		defaults.addDefault("storage.evict-after", 300);
+		defaults.setComments("storage", List.of(
+				"Whether to store PvP states in the states folder and load each player's state as they log in, instead of",
+				"keeping every stored state in memory. States are moved over from data.yml when this is enabled, and back when disabled.",
+				"evict-after is the number of seconds after a player leaves before their state is removed from memory.",
+				"While enabled, offline players are not shown in /pvp list, and the pets of offline players who left long ago",
+				"are treated as belonging to a player with PvP disabled.",
+				"Changes to these settings require a restart."));
+
+		defaults.addDefault("sync.enabled", false);
+		defaults.addDefault("sync.transport", "plugin-messaging");
+		defaults.addDefault("sync.batch-interval", 5);
+		defaults.addDefault("sync.max-batch-size", 256);
+		defaults.addDefault("sync.switch-grace", 10);
+		defaults.setComments("sync", List.of(
+				"Shares PvP states and combat tags with other servers on the network, so they follow players between servers.",
+				"transport is either plugin-messaging, which sends through the proxy and requires BungeeCord plugin",
+				"messaging to be enabled on it, or loopback, which only connects within this server and is intended for testing.",
+				"Changes are sent every batch-interval ticks, with at most max-batch-size changes per message.",
+				"Players who leave during a PvP fight are only punished if they do not join another server within",
+				"switch-grace seconds. The punishment is announced then, and they are killed when they next join any server.",
+				"Players are punished as soon as they leave if this server is not behind a proxy.",
+				"Changes to these settings require a restart."));
+
+		defaults.addDefault("load-shedding.enabled", true);
+		defaults.addDefault("load-shedding.reduced-budget", 2.0);
+		defaults.addDefault("load-shedding.critical-budget", 5.0);
+		defaults.addDefault("load-shedding.proximity-cache-ticks", 5);
+		defaults.addDefault("load-shedding.flush-interval", 20);
+		defaults.setComments("load-shedding", List.of(
+				"Reduces non-essential work when the plugin spends too long on each server tick, such as during large fights.",
+				"Protection itself is never reduced, only messages, broadcasts and housekeeping.",
+				"reduced-budget is the average number of milliseconds per tick above which cannot-damage messages are",
+				"suppressed and nearby player scans are reused for proximity-cache-ticks ticks.",
+				"critical-budget is the average above which combat tag expiry and PvP toggle broadcasts only happen every",
+				"flush-interval ticks, with broadcasts combined into a summary."));
+
+		defaults.addDefault("profiling.enabled", false);
+		defaults.addDefault("profiling.thresholds.attempt", 0);
+		defaults.addDefault("profiling.thresholds.nearby-scan", 0);
+		defaults.addDefault("profiling.thresholds.attribution", 0);
+		defaults.addDefault("profiling.thresholds.message", 0);
+		defaults.addDefault("profiling.thresholds.persistence", 0);
+		defaults.setComments("profiling", List.of(
+				"Whether to emit Java Flight Recorder events for PvP checks, nearby player scans, attribution,",
+				"message rendering and saving or loading PvP states. Events are only recorded while a JFR recording is",
+				"running. Thresholds are the minimum duration in microseconds for an event to be recorded."));
+
+		defaults.addDefault("watch-files", false);
+		defaults.setComments("watch-files", List.of(
+				"Whether to watch config.yml and messages.yml for changes, and reload them automatically when edited.",
+				"Only changed messages are reloaded. Settings which require a restart are not affected."));
+
 		config.setDefaults(defaults);
-		saveDefaultConfig();
 
-		if(!new File(getDataFolder(), "data.yml").exists()) {
-			saveResource("data.yml", false);
+		return ZoneRules.compile(config.getConfigurationSection("zones"), getLogger());
+	}
+
+	/**
+	 * Starts or stops the config watcher to match the watch-files setting
+	 * Only called on the main thread, so at most one watcher is ever running
+	 */
+	private void updateConfigWatcher() {
+		boolean enabled = config.getBoolean("watch-files");
+
+		if(!enabled && configWatcher != null) {
+			configWatcher.stop();
+			configWatcher = null;
+		} else if(enabled && configWatcher == null) {
+			try {
+				configWatcher = new ConfigWatcher(getDataFolder().toPath(), Set.of("config.yml", "messages.yml"),
+												  this::onFileChanged, getLogger());
+				configWatcher.start();
+			} catch (IOException e) {
+				getLogger().severe("Failed to start config watcher, automatic reloads will not be possible");
+				e.printStackTrace();
+			}
 		}
+	}
 
-		if(!new File(getDataFolder(), "messages.yml").exists()) {
-			saveResource("messages.yml", false);
+	/**
+	 * Handles a change to a watched file. Called on the watcher thread.
+	 * Files are parsed here, and the config and messages are only ever swapped on the main thread
+	 * @param file The name of the changed file
+	 */
+	private void onFileChanged(String file) {
+		YamlConfiguration parsed = new YamlConfiguration();
+
+		try {
+			parsed.load(new File(getDataFolder(), file));
+		} catch (IOException | InvalidConfigurationException e) {
+			getLogger().warning("Not reloading " + file + " as it could not be parsed: " + e.getMessage());
+			return;
 		}
 
-		Configuration messages = YamlConfiguration.loadConfiguration(new File(getDataFolder(), "messages.yml"));
-		Messages.set(messages);
+		if(file.equals("messages.yml")) {
+			//Swapped on the main thread, so it cannot race a /pvp reload
+			getServer().getScheduler().runTask(this, () -> {
+				int changed = Messages.update(parsed);
+
+				if(changed > 0) {
+					getLogger().info("Reloaded " + changed + " changed messages from messages.yml");
+				}
+			});
+		} else if(file.equals("config.yml")) {
+			ZoneRules rules = compileConfig(parsed);
+
+			getServer().getScheduler().runTask(this, () -> {
+				config = parsed;
+				zoneRules = rules;
+				loadShedder.configure(parsed.getConfigurationSection("load-shedding"));
+				Profiling.configure(parsed.getConfigurationSection("profiling"));
+				updateConfigWatcher();
+				getLogger().info("Reloaded config.yml");
+			});
+		}
 	}
 
 	/**
@@ -124,37 +455,183 @@ public final class PvP extends JavaPlugin implements Listener {
 	 * @return Whether the PvP attempt is allowed
 	 */
 	public boolean checkPvPAttempt(OfflinePlayer attacker, Player victim) {
+		long start = loadShedder.start();
+		Profiling.AttemptEvent event = Profiling.beginAttempt();
+		int reason = AuditLog.REASON_NONE;
+
+		try {
+			reason = decidePvPAttempt(attacker, victim);
+			return reason == AuditLog.REASON_NONE;
+		} finally {
+			loadShedder.stop(start);
+
+			if(event != null) {
+				event.attacker = attacker.getUniqueId().toString();
+				event.victim = victim.getUniqueId().toString();
+				event.allowed = reason == AuditLog.REASON_NONE;
+				event.reason = AuditLog.getReasonName(reason);
+				Profiling.commit(event);
+			}
+		}
+	}
+
+	/**
+	 * Decides whether a PvP attempt is allowed, auditing the decision and sending any rejection message
+	 * @param attacker - The attacker
+	 * @param victim - The victim
+	 * @return {@link AuditLog#REASON_NONE} if the attempt is allowed, otherwise the reason it was rejected
+	 */
+	private int decidePvPAttempt(OfflinePlayer attacker, Player victim) {
 		if(attacker.equals(victim)) {
-			return true;
+			return AuditLog.REASON_NONE;
 		}
 
 		if(!attacker.isOnline()) {
-			return false;
+			audit(AuditLog.Type.CANCELLED, attacker.getUniqueId(), victim.getUniqueId(), AuditLog.REASON_ATTACKER_OFFLINE);
+			return AuditLog.REASON_ATTACKER_OFFLINE;
 		}
 
-		if(!pvpEnabled.contains(attacker.getUniqueId())) {
-			if(attacker instanceof Player onlinePlayer && checkMessageCooldown(onlinePlayer)) {
-				lastMessage.put(onlinePlayer, Instant.now());
-				onlinePlayer.sendMessage(Messages.getComponent("errors.cannot-damage-pvp-disabled",
-														   Collections.emptyMap(),
-														   Collections.singletonMap("player", victim.displayName())));
-			}
+		ZoneRules rules = zoneRules;
+		ZoneRules.ZoneMode victimZone = rules.getMode(victim.getLocation());
+		ZoneRules.ZoneMode attackerZone = attacker instanceof Player onlinePlayer
+				? rules.getMode(onlinePlayer.getLocation()) : victimZone;
 
-			return false;
+		if(victimZone == ZoneRules.ZoneMode.FORCED_OFF || attackerZone == ZoneRules.ZoneMode.FORCED_OFF) {
+			return rejectPvPAttempt(attacker, victim, "errors.cannot-damage-zone-protected", AuditLog.REASON_ZONE);
+		}
+
+		if(duels.areDuelling(attacker.getUniqueId(), victim.getUniqueId())) {
+			audit(AuditLog.Type.ALLOWED, attacker.getUniqueId(), victim.getUniqueId(), AuditLog.REASON_NONE);
+			return AuditLog.REASON_NONE;
+		}
+
+		if(attacker instanceof Player onlinePlayer && areAllies(onlinePlayer, victim)) {
+			return rejectPvPAttempt(attacker, victim, "errors.cannot-damage-party-member", AuditLog.REASON_PARTY);
+		}
+
+		if(victimZone == ZoneRules.ZoneMode.FORCED_ON && attackerZone == ZoneRules.ZoneMode.FORCED_ON) {
+			audit(AuditLog.Type.ALLOWED, attacker.getUniqueId(), victim.getUniqueId(), AuditLog.REASON_NONE);
+			return AuditLog.REASON_NONE;
+		}
+
+		if(!pvpEnabled.contains(attacker.getUniqueId())) {
+			return rejectPvPAttempt(attacker, victim, "errors.cannot-damage-pvp-disabled",
+									AuditLog.REASON_ATTACKER_DISABLED);
 		}
 
 		if(!pvpEnabled.contains(victim.getUniqueId())) {
-			if(attacker instanceof Player onlinePlayer && checkMessageCooldown(onlinePlayer)) {
-				lastMessage.put(onlinePlayer, Instant.now());
-				onlinePlayer.sendMessage(Messages.getComponent("errors.cannot-damage-target-pvp-disabled",
-														   Collections.emptyMap(),
-														   Collections.singletonMap("player", victim.displayName())));
+			return rejectPvPAttempt(attacker, victim, "errors.cannot-damage-target-pvp-disabled",
+									AuditLog.REASON_VICTIM_DISABLED);
+		}
+
+		audit(AuditLog.Type.ALLOWED, attacker.getUniqueId(), victim.getUniqueId(), AuditLog.REASON_NONE);
+		return AuditLog.REASON_NONE;
+	}
+
+	/**
+	 * Determines whether an attack on an entity owned by a player is allowed, based on the status of the attacker and
+	 * the owner, who may be offline
+	 * Owned entities are protected in the same way as their owner, with zones applied at the entity's location.
+	 * A message will be sent to the attacking player if the attack is not allowed
+	 * @param attacker The attacker
+	 * @param entity The owned entity
+	 * @param ownerId The UUID of the entity's owner
+	 * @return Whether the attack is allowed
+	 */
+	public boolean checkOwnedEntityAttempt(OfflinePlayer attacker, Entity entity, UUID ownerId) {
+		long start = loadShedder.start();
+
+		try {
+			return decideOwnedEntityAttempt(attacker, entity, ownerId) == AuditLog.REASON_NONE;
+		} finally {
+			loadShedder.stop(start);
+		}
+	}
+
+	private int decideOwnedEntityAttempt(OfflinePlayer attacker, Entity entity, UUID ownerId) {
+		if(attacker.getUniqueId().equals(ownerId)) {
+			return AuditLog.REASON_NONE;
+		}
+
+		if(!attacker.isOnline()) {
+			audit(AuditLog.Type.CANCELLED, attacker.getUniqueId(), ownerId, AuditLog.REASON_ATTACKER_OFFLINE);
+			return AuditLog.REASON_ATTACKER_OFFLINE;
+		}
+
+		Player owner = getServer().getPlayer(ownerId);
+		ZoneRules rules = zoneRules;
+		ZoneRules.ZoneMode entityZone = rules.getMode(entity.getLocation());
+		ZoneRules.ZoneMode attackerZone = attacker instanceof Player onlinePlayer
+				? rules.getMode(onlinePlayer.getLocation()) : entityZone;
+
+		if(entityZone == ZoneRules.ZoneMode.FORCED_OFF || attackerZone == ZoneRules.ZoneMode.FORCED_OFF) {
+			return rejectPvPAttempt(attacker, ownerId, "errors.cannot-damage-pet-zone-protected",
+									getOwnedEntityNames(entity, owner, ownerId), AuditLog.REASON_ZONE);
+		}
+
+		if(owner != null && attacker instanceof Player onlinePlayer) {
+			if(duels.areDuelling(onlinePlayer.getUniqueId(), ownerId)) {
+				audit(AuditLog.Type.ALLOWED, attacker.getUniqueId(), ownerId, AuditLog.REASON_NONE);
+				return AuditLog.REASON_NONE;
 			}
 
-			return false;
+			if(areAllies(onlinePlayer, owner)) {
+				return rejectPvPAttempt(attacker, ownerId, "errors.cannot-damage-pet-party-member",
+										getOwnedEntityNames(entity, owner, ownerId), AuditLog.REASON_PARTY);
+			}
 		}
 
-		return true;
+		if(entityZone == ZoneRules.ZoneMode.FORCED_ON && attackerZone == ZoneRules.ZoneMode.FORCED_ON) {
+			audit(AuditLog.Type.ALLOWED, attacker.getUniqueId(), ownerId, AuditLog.REASON_NONE);
+			return AuditLog.REASON_NONE;
+		}
+
+		if(!pvpEnabled.contains(attacker.getUniqueId())) {
+			return rejectPvPAttempt(attacker, ownerId, "errors.cannot-damage-pet-pvp-disabled",
+									getOwnedEntityNames(entity, owner, ownerId), AuditLog.REASON_ATTACKER_DISABLED);
+		}
+
+		if(!pvpEnabled.contains(ownerId)) {
+			return rejectPvPAttempt(attacker, ownerId, "errors.cannot-damage-pet-owner-pvp-disabled",
+									getOwnedEntityNames(entity, owner, ownerId), AuditLog.REASON_VICTIM_DISABLED);
+		}
+
+		audit(AuditLog.Type.ALLOWED, attacker.getUniqueId(), ownerId, AuditLog.REASON_NONE);
+		return AuditLog.REASON_NONE;
+	}
+
+	private Map<String, ComponentLike> getOwnedEntityNames(Entity entity, @Nullable Player owner, UUID ownerId) {
+		ComponentLike ownerName = owner != null ? owner.displayName()
+				: Component.text(nameCache.getName(ownerId).orElse(ownerId.toString()));
+
+		return Map.of("player", ownerName, "pet", entity.name());
+	}
+
+	private int rejectPvPAttempt(OfflinePlayer attacker, Player victim, String message, int reason) {
+		return rejectPvPAttempt(attacker, victim.getUniqueId(), message,
+								Collections.singletonMap("player", victim.displayName()), reason);
+	}
+
+	private int rejectPvPAttempt(OfflinePlayer attacker, UUID victim, String message,
+								 Map<String, ComponentLike> replacements, int reason) {
+		audit(AuditLog.Type.CANCELLED, attacker.getUniqueId(), victim, reason);
+
+		//Rejection messages are informational, so are the first thing dropped under load
+		if(attacker instanceof Player onlinePlayer && !loadShedder.isAtLeast(LoadShedder.Tier.REDUCED)
+				&& checkMessageCooldown(onlinePlayer)) {
+			lastMessage.put(onlinePlayer, Instant.now());
+			onlinePlayer.sendMessage(Messages.getComponent(message, Collections.emptyMap(), replacements));
+		}
+
+		return reason;
+	}
+
+	private void audit(AuditLog.Type type, UUID player, @Nullable UUID other, int value) {
+		AuditLog auditLog = this.auditLog;
+
+		if(auditLog != null) {
+			auditLog.record(type, player, other, value);
+		}
 	}
 
 	private boolean checkMessageCooldown(Player target) {
@@ -176,9 +653,43 @@ public final class PvP extends JavaPlugin implements Listener {
 	 * @return A list of any pvp protected players in range
 	 */
 	List<Player> getNearbyProtectedPlayers(OfflinePlayer player, Location location, int range) {
-		return location.getWorld().getPlayers().stream()
+		long start = loadShedder.start();
+		Profiling.NearbyScanEvent event = Profiling.beginNearbyScan();
+
+		try {
+			boolean cached = loadShedder.isAtLeast(LoadShedder.Tier.REDUCED);
+			List<Player> candidates = getNearbyCandidates(location, range);
+			List<Player> nearby = findNearbyProtectedPlayers(player, location, range, candidates);
+
+			//Cached candidates can miss players who moved quickly since, so an allowed action is always rechecked
+			if(cached && nearby.isEmpty()) {
+				candidates = location.getWorld().getPlayers();
+				nearby = findNearbyProtectedPlayers(player, location, range, candidates);
+			}
+
+			if(event != null) {
+				event.world = location.getWorld().getName();
+				event.range = range;
+				event.candidates = candidates.size();
+				event.protectedPlayers = nearby.size();
+				event.cached = cached;
+			}
+
+			return nearby;
+		} finally {
+			loadShedder.stop(start);
+			Profiling.commit(event);
+		}
+	}
+
+	private List<Player> findNearbyProtectedPlayers(OfflinePlayer player, Location location, int range,
+													List<Player> candidates) {
+		ZoneRules rules = zoneRules;
+		ZoneRules.ZoneMode locationZone = rules.getMode(location);
+
+		return candidates.stream()
 				.filter(otherPlayer -> {
-					if(otherPlayer.equals(player)) {
+					if(otherPlayer.equals(player) || !otherPlayer.isValid()) {
 						return false;
 					}
 
@@ -198,6 +709,24 @@ public final class PvP extends JavaPlugin implements Listener {
 						return true;
 					}
 
+					ZoneRules.ZoneMode otherZone = rules.getMode(otherPlayer.getLocation());
+
+					if(locationZone == ZoneRules.ZoneMode.FORCED_OFF || otherZone == ZoneRules.ZoneMode.FORCED_OFF) {
+						return true;
+					}
+
+					if(duels.areDuelling(player.getUniqueId(), otherPlayer.getUniqueId())) {
+						return false;
+					}
+
+					if(player instanceof Player onlinePlayer && areAllies(onlinePlayer, otherPlayer)) {
+						return true;
+					}
+
+					if(locationZone == ZoneRules.ZoneMode.FORCED_ON && otherZone == ZoneRules.ZoneMode.FORCED_ON) {
+						return false;
+					}
+
 					return !pvpEnabled.contains(player.getUniqueId()) || !pvpEnabled.contains(otherPlayer.getUniqueId());
 				})
 				.sorted((Player player1, Player player2) -> {
@@ -215,120 +744,806 @@ public final class PvP extends JavaPlugin implements Listener {
 	}
 
 	/**
-	 * Returns whether the given player has PvP enabled
-	 * @param player The player to check
-	 * @return Whether PvP is enabled
+	 * Returns the players who may be within range of the given location, which must then be checked individually
+	 * Under load, results are reused for a few ticks. Cached results include players within a margin beyond the
+	 * range, covering the distance they could normally have moved since. Faster players, such as those using elytra,
+	 * can still be missed, so cached results may only be used to deny an action and never to allow one.
+	 * @param location The location to check
+	 * @param range The range to check
+	 * @return The candidate players
 	 */
-	public boolean hasPvPEnabled(Player player) {
-		return pvpEnabled.contains(player.getUniqueId());
+	private List<Player> getNearbyCandidates(Location location, int range) {
+		if(!loadShedder.isAtLeast(LoadShedder.Tier.REDUCED)) {
+			return location.getWorld().getPlayers();
+		}
+
+		ProximityKey key = new ProximityKey(location.getWorld().getUID(), location.getBlockX(), location.getBlockY(),
+										   location.getBlockZ(), range);
+
+		return proximityCache.computeIfAbsent(key, k -> {
+			double margin = range + 1 + loadShedder.getProximityCacheTicks() * 2;
+
+			return location.getWorld().getPlayers().stream()
+					.filter(otherPlayer -> otherPlayer.getLocation().distanceSquared(location) < margin * margin)
+					.collect(Collectors.toList());
+		});
 	}
 
 	/**
-	 * Returns the last time the given player last engaged in PvP
-	 * If the player has never engaged in PvP, the epoch time will be returned
-	 * @param player The player to check
-	 * @return The last PvP time
+	 * Discards cached nearby player scans, after a player moves in a way which may exceed the cache margin
 	 */
-	public Instant getLastPvPTime(Player player) {
-		return lastDamage.getOrDefault(player, Instant.EPOCH);
+	void invalidateProximityCache() {
+		proximityCache.clear();
 	}
 
 	/**
-	 * Returns the remaining time until the given player is no longer considered "in PvP"
-	 * @param player The player to check
-	 * @return The remaining time
+	 * Returns the load shedder, for reporting the current tier
+	 * @return The load shedder
 	 */
-	public long getRemainingPvPCooldown(Player player) {
-		return Math.max(0, config.getInt("pvp-timeout") - getLastPvPTime(player).until(Instant.now(), ChronoUnit.SECONDS));
+	public LoadShedder getLoadShedder() {
+		return loadShedder;
 	}
 
 	/**
-	 * Returns the last time the given player toggled their PvP state
-	 * If the player has never toggled their state, the epoch time will be returned
+	 * Returns whether the given player has PvP enabled
 	 * @param player The player to check
-	 * @return The last toggle time
+	 * @return Whether PvP is enabled
 	 */
-	public Instant getLastToggleTime(Player player) {
-		return lastToggle.getOrDefault(player.getUniqueId(), Instant.EPOCH);
+	public boolean hasPvPEnabled(Player player) {
+		return pvpEnabled.contains(player.getUniqueId());
 	}
 
 	/**
-	 * Returns the remaining time until the given player is no longer considered to have recently toggled PvP
-	 * @param player The player to check
-	 * @return The remaining time
+	 * Returns the zone mode in effect at the given location
+	 * @param location The location to check
+	 * @return The zone mode
 	 */
-	public long getRemainingToggleCooldown(Player player) {
-		return Math.max(0, config.getInt("pvp-timeout") - getLastToggleTime(player).until(Instant.now(), ChronoUnit.SECONDS));
+	public ZoneRules.ZoneMode getZoneMode(Location location) {
+		return zoneRules.getMode(location);
 	}
 
 	/**
-	 * Records a PvP event for the given players
-	 * Both players will have their last PvP times set to the current time
-	 * @param attacker The attacker
-	 * @param victim The victim
+	 * Returns whether PvP is currently possible between the given players, taking zone rules into account
+	 * No messages are sent
+	 * @param player1 The first player
+	 * @param player2 The second player
+	 * @return Whether PvP is possible
 	 */
-	public void recordPvP(Player attacker, Player victim) {
-		if(attacker.equals(victim)) {
-			return;
-		}
-
-		Instant time = Instant.now();
-		lastDamage.put(attacker, time);
-		lastDamage.put(victim, time);
+	public boolean canPvP(Player player1, Player player2) {
+		return canPvP(player1, player2, true);
 	}
 
 	/**
-	 * Toggles the PvP enabled state of the given player
-	 * @param player The player to toggle
-	 * @return The player's new PvP state
+	 * Returns whether PvP is currently possible between the given players, taking zone rules into account
+	 * Duels and allies are only checked if requested, as they are tracked in maps which may only be read on the
+	 * main thread. Without them, only PvP states and zone rules are considered, which is safe on any thread.
+	 * No messages are sent
+	 * @param player1 The first player
+	 * @param player2 The second player
+	 * @param checkRelations Whether to check for duels and allies
+	 * @return Whether PvP is possible
 	 */
-	public boolean togglePvP(@NotNull Player player) {
-		clearPlayer(player);
-		lastToggle.put(player.getUniqueId(), Instant.now());
+	public boolean canPvP(Player player1, Player player2, boolean checkRelations) {
+		if(player1.equals(player2)) {
+			return false;
+		}
 
-		if(pvpEnabled.contains(player.getUniqueId())) {
-			pvpEnabled.remove(player.getUniqueId());
-			broadcastPvPStatus(player);
+		ZoneRules rules = zoneRules;
+		ZoneRules.ZoneMode zone1 = rules.getMode(player1.getLocation());
+		ZoneRules.ZoneMode zone2 = rules.getMode(player2.getLocation());
+
+		if(zone1 == ZoneRules.ZoneMode.FORCED_OFF || zone2 == ZoneRules.ZoneMode.FORCED_OFF) {
 			return false;
-		} else {
-			pvpEnabled.add(player.getUniqueId());
-			broadcastPvPStatus(player);
+		}
+
+		if(checkRelations && duels.areDuelling(player1.getUniqueId(), player2.getUniqueId())) {
 			return true;
 		}
-	}
 
-	private void broadcastPvPStatus(Player player) {
-		Component message = Messages.getComponent(hasPvPEnabled(player) ? "notify-pvp-enabled" : "notify-pvp-disabled",
-												  Collections.emptyMap(),
-												  Collections.singletonMap("player", player.displayName()));
+		if(checkRelations && areAllies(player1, player2)) {
+			return false;
+		}
 
-		for (Player onlinePlayer : getServer().getOnlinePlayers()) {
-			if(!onlinePlayer.equals(player) && onlinePlayer.canSee(player)) {
-				onlinePlayer.sendMessage(message);
-			}
+		if(zone1 == ZoneRules.ZoneMode.FORCED_ON && zone2 == ZoneRules.ZoneMode.FORCED_ON) {
+			return true;
 		}
+
+		return pvpEnabled.contains(player1.getUniqueId()) && pvpEnabled.contains(player2.getUniqueId());
 	}
 
 	/**
-	 * Clears the state of the given player. Their PvP status will not be affected.
-	 * @param player The player to clear
+	 * Returns the PvP enabled state of the player with the given UUID, who may be offline
+	 * The returned future may be completed on another thread
+	 * @param uuid The UUID of the player to check
+	 * @return Future completed with whether PvP is enabled
 	 */
-	public void clearPlayer(Player player) {
-		lastDamage.remove(player);
-		lastMessage.remove(player);
-		lastToggle.remove(player.getUniqueId());
+	public CompletableFuture<Boolean> getPvPState(UUID uuid) {
+		PvPStateStore stateStore = this.stateStore;
+
+		if(stateStore == null || residentPlayers.contains(uuid)) {
+			return CompletableFuture.completedFuture(pvpEnabled.contains(uuid));
+		}
+
+		return stateStore.read(uuid);
 	}
 
 	/**
-	 * Returns the player "responsible" for the given entity, if any
-	 * If the entity is a player then the player is returned
-	 * If the entity is a projectile then the shooter is returned if it was a player
-	 * If the entity is tnt then the source is returned if it was a player
-	 * If the entity is a wolf then the owner is returned if is a player
-	 * @param entity The entity to check
-	 * @return The player
+	 * Changes the stored PvP state of the given player
+	 * When lazy loading, the in-memory state is only changed for resident players, and the change is always
+	 * written to the state store
+	 * @param uuid The player's UUID
+	 * @param enabled The new PvP state
 	 */
-	Optional<OfflinePlayer> getResponsiblePlayer(Entity entity) {
+	private void setStoredPvPState(UUID uuid, boolean enabled) {
+		if(stateStore == null || residentPlayers.contains(uuid)) {
+			if(enabled) {
+				pvpEnabled.add(uuid);
+			} else {
+				pvpEnabled.remove(uuid);
+			}
+		}
+
+		if(stateStore != null) {
+			stateStore.write(uuid, enabled);
+		}
+
+		//A player between login and join, or whose state is still being read, would otherwise lose this change
+		pendingReads.remove(uuid);
+		preloadedStates.computeIfPresent(uuid, (key, state) -> new PreloadedState(enabled, state.loadedAt()));
+	}
+
+	/**
+	 * Sets the PvP enabled state of the player with the given UUID, who may be offline
+	 * The change is applied on the main thread. If the player is online the change is handled as a normal toggle,
+	 * including notifying other players.
+	 * @param uuid The UUID of the player to change
+	 * @param enabled The new PvP state
+	 * @return Future completed on the main thread once the change has been applied
+	 */
+	public CompletableFuture<Void> setPvPState(UUID uuid, boolean enabled) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+
+		getServer().getScheduler().runTask(this, () -> {
+			Player player = getServer().getPlayer(uuid);
+
+			if(player != null) {
+				if(hasPvPEnabled(player) != enabled) {
+					togglePvP(player);
+				}
+			} else {
+				setStoredPvPState(uuid, enabled);
+				audit(AuditLog.Type.TOGGLE, uuid, null, enabled ? AuditLog.STATE_ENABLED : AuditLog.STATE_DISABLED);
+
+				if(sync != null) {
+					sync.publishToggle(uuid, enabled);
+				}
+			}
+
+			future.complete(null);
+		});
+
+		return future;
+	}
+
+	/**
+	 * Returns the PvP statistics, if enabled
+	 * @return The statistics, or null if disabled
+	 */
+	public @Nullable PvPStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Records the death of the given player
+	 * If the player was killed by another player, either directly or through indirect damage after a recent attack,
+	 * the kill is recorded in the statistics
+	 * @param victim The player who died
+	 */
+	public void recordDeath(Player victim) {
+		if(stats == null) {
+			return;
+		}
+
+		Player killer = victim.getKiller();
+		UUID killerId = killer != null ? killer.getUniqueId()
+				: lastAttackers.getAttacker(victim.getUniqueId(), System.currentTimeMillis());
+
+		if(killerId != null && !killerId.equals(victim.getUniqueId())) {
+			stats.recordKill(killerId, victim.getUniqueId());
+		}
+	}
+
+	/**
+	 * Records the punishment of the given player for leaving during a PvP fight
+	 * @param player The punished player
+	 */
+	public void recordPunishment(Player player) {
+		recordPunishment(player.getUniqueId());
+	}
+
+	private void recordPunishment(UUID uuid) {
+		audit(AuditLog.Type.PUNISH, uuid, null, AuditLog.REASON_NONE);
+
+		if(stats != null) {
+			stats.recordPunishment(uuid);
+		}
+	}
+
+	/**
+	 * Defers the punishment of the given player for leaving during a PvP fight, if they may be switching servers
+	 * When syncing, the player is only punished if they do not join another server within the switch grace period.
+	 * The punishment is then kept until they next join any server, so it survives restarts and server switches.
+	 * @param player The leaving player
+	 * @return Whether the punishment was deferred, false if the player should be punished immediately
+	 */
+	boolean deferPunishment(Player player) {
+		if(sync == null || !sync.isNetworked()) {
+			return false;
+		}
+
+		sync.recordDeparture(player.getUniqueId(), System.currentTimeMillis());
+		return true;
+	}
+
+	private void servePunishment(Player player) {
+		player.setHealth(0);
+
+		if(journal != null) {
+			journal.appendPunishmentServed(player.getUniqueId());
+		}
+
+		if(sync != null) {
+			sync.publishPunishment(player.getUniqueId(), false);
+		}
+	}
+
+	private void punishDeparted(UUID uuid) {
+		Instant now = Instant.now();
+
+		recordPunishment(uuid);
+		pendingPunishments.put(uuid, now);
+
+		if(journal != null) {
+			journal.appendPunishment(uuid, now);
+		}
+
+		sync.publishPunishment(uuid, true);
+
+		getServer().broadcast(
+				Messages.getComponent("notify-pvp-punish", Collections.emptyMap(),
+									  Collections.singletonMap("player", Component.text(
+											  nameCache.getName(uuid).orElse(uuid.toString())))));
+	}
+
+	/**
+	 * Returns the cache of known player names
+	 * @return The name cache
+	 */
+	public NameCache getNameCache() {
+		return nameCache;
+	}
+
+	/**
+	 * Returns whether the given players are allies, and therefore protected from each other
+	 * Players are allies if they are in the same party, or if scoreboard team protection is enabled and they are
+	 * on the same scoreboard team
+	 * @param player1 The first player
+	 * @param player2 The second player
+	 * @return Whether the players are allies
+	 */
+	public boolean areAllies(Player player1, Player player2) {
+		if(parties.areAllies(player1.getUniqueId(), player2.getUniqueId())) {
+			return true;
+		}
+
+		if(!config.getBoolean("parties.scoreboard-teams")) {
+			return false;
+		}
+
+		//Nametag teams group players by PvP state rather than allegiance, so are ignored
+		Team team = getServer().getScoreboardManager().getMainScoreboard().getEntryTeam(player1.getName());
+
+		return team != null && !team.getName().startsWith(NametagTeams.TEAM_PREFIX)
+				&& team.hasEntry(player2.getName());
+	}
+
+	/**
+	 * Returns the prefix index of online player names, for tab completion
+	 * @return The player names
+	 */
+	public PlayerNameTrie getPlayerNames() {
+		return playerNames;
+	}
+
+	/**
+	 * Returns the party manager
+	 * @return The parties
+	 */
+	public Parties getParties() {
+		return parties;
+	}
+
+	/**
+	 * Returns the configured maximum party size
+	 * @return The maximum size, or 0 for no limit
+	 */
+	public int getMaxPartySize() {
+		return Math.max(0, config.getInt("parties.max-size"));
+	}
+
+	/**
+	 * Returns the duel manager
+	 * @return The duels
+	 */
+	public Duels getDuels() {
+		return duels;
+	}
+
+	/**
+	 * Returns the configured duel duration
+	 * @return The duration in seconds
+	 */
+	public long getDuelDuration() {
+		return Math.max(1, config.getLong("duels.duration"));
+	}
+
+	/**
+	 * Returns the configured time duel requests can be accepted for
+	 * @return The timeout in seconds
+	 */
+	public long getDuelRequestTimeout() {
+		return Math.max(1, config.getLong("duels.request-timeout"));
+	}
+
+	/**
+	 * Ends the active duel of the given player, if any, notifying both participants
+	 * @param player The player
+	 */
+	public void endDuel(Player player) {
+		Duels.Duel duel = duels.end(player.getUniqueId());
+
+		if(duel != null) {
+			notifyDuelEnded(duel, "duel-ended");
+		}
+	}
+
+	private void notifyDuelEnded(Duels.Duel duel, String message) {
+		Player player1 = getServer().getPlayer(duel.player1());
+		Player player2 = getServer().getPlayer(duel.player2());
+
+		if(player1 != null && player2 != null) {
+			player1.sendMessage(Messages.getComponent(message, Collections.emptyMap(),
+													  Collections.singletonMap("player", player2.displayName())));
+			player2.sendMessage(Messages.getComponent(message, Collections.emptyMap(),
+													  Collections.singletonMap("player", player1.displayName())));
+		}
+	}
+
+	/**
+	 * Assigns per-session state for a player who has joined
+	 * @param player The player
+	 */
+	void handleJoin(Player player) {
+		playerSlots.assign(player.getUniqueId());
+		parties.onJoin(player.getUniqueId());
+		playerNames.add(player);
+
+		if(stateStore != null) {
+			loadResidentState(player.getUniqueId());
+		}
+
+		if(sync != null) {
+			sync.publishArrival(player.getUniqueId());
+		}
+
+		if(pendingPunishments.remove(player.getUniqueId()) != null) {
+			servePunishment(player);
+		}
+
+		invalidateProximityCache();
+	}
+
+	/**
+	 * Releases per-session state for a player who is leaving
+	 * @param player The player
+	 */
+	void handleQuit(Player player) {
+		Duels.Duel duel = duels.onQuit(player.getUniqueId());
+
+		if(duel != null) {
+			Player opponent = getServer().getPlayer(duel.getOpponent(player.getUniqueId()));
+
+			if(opponent != null) {
+				opponent.sendMessage(Messages.getComponent("duel-ended", Collections.emptyMap(),
+														   Collections.singletonMap("player", player.displayName())));
+			}
+		}
+
+		parties.onQuit(player.getUniqueId());
+		playerSlots.release(player.getUniqueId());
+		playerNames.remove(player);
+
+		if(stateStore != null) {
+			evictions.put(player.getUniqueId(),
+						  System.currentTimeMillis() + Math.max(0, config.getLong("storage.evict-after")) * 1000);
+		}
+	}
+
+	/**
+	 * Returns the last time the given player last engaged in PvP
+	 * If the player has never engaged in PvP, the epoch time will be returned
+	 * @param player The player to check
+	 * @return The last PvP time
+	 */
+	public Instant getLastPvPTime(Player player) {
+		return lastDamage.getOrDefault(player.getUniqueId(), Instant.EPOCH);
+	}
+
+	/**
+	 * Returns the remaining time until the given player is no longer considered "in PvP"
+	 * @param player The player to check
+	 * @return The remaining time
+	 */
+	public long getRemainingPvPCooldown(Player player) {
+		return getRemainingCooldown(getLastPvPTime(player));
+	}
+
+	private long getRemainingCooldown(Instant since) {
+		return Math.max(0, config.getInt("pvp-timeout") - since.until(Instant.now(), ChronoUnit.SECONDS));
+	}
+
+	/**
+	 * Returns the last time the given player toggled their PvP state
+	 * If the player has never toggled their state, the epoch time will be returned
+	 * @param player The player to check
+	 * @return The last toggle time
+	 */
+	public Instant getLastToggleTime(Player player) {
+		return lastToggle.getOrDefault(player.getUniqueId(), Instant.EPOCH);
+	}
+
+	/**
+	 * Returns the remaining time until the given player is no longer considered to have recently toggled PvP
+	 * @param player The player to check
+	 * @return The remaining time
+	 */
+	public long getRemainingToggleCooldown(Player player) {
+		return getRemainingCooldown(getLastToggleTime(player));
+	}
+
+	/**
+	 * Records a PvP event for the given players
+	 * Both players will have their last PvP times set to the current time
+	 * @param attacker The attacker
+	 * @param victim The victim
+	 */
+	public void recordPvP(Player attacker, Player victim) {
+		if(attacker.equals(victim)) {
+			return;
+		}
+
+		Instant time = Instant.now();
+		tagPlayers(attacker, victim, time);
+		lastAttackers.record(victim.getUniqueId(), attacker.getUniqueId(),
+							 time.toEpochMilli() + config.getLong("indirect-damage-window") * 1000);
+	}
+
+	/**
+	 * Records indirect damage to the given player, such as fire ticks, poison, wither or falling
+	 * If the player was recently attacked by another player, the damage is attributed to that attacker and both
+	 * players' combat tags are extended. The attribution window itself is not extended.
+	 * @param victim The damaged player
+	 */
+	public void recordIndirectPvP(Player victim) {
+		Instant time = Instant.now();
+		UUID attackerId = lastAttackers.getAttacker(victim.getUniqueId(), time.toEpochMilli());
+		Player attacker = attackerId != null ? getServer().getPlayer(attackerId) : null;
+
+		if(attacker != null) {
+			tagPlayers(attacker, victim, time);
+		}
+	}
+
+	private void tagPlayers(Player attacker, Player victim, Instant time) {
+		lastDamage.put(attacker.getUniqueId(), time);
+		lastDamage.put(victim.getUniqueId(), time);
+
+		if(sync != null) {
+			sync.publishTag(attacker.getUniqueId(), time);
+			sync.publishTag(victim.getUniqueId(), time);
+		}
+
+		audit(AuditLog.Type.TAG, attacker.getUniqueId(), victim.getUniqueId(), AuditLog.REASON_NONE);
+		updateNametag(attacker);
+		updateNametag(victim);
+
+		if(journal != null) {
+			journal.appendTag(attacker.getUniqueId(), time);
+			journal.appendTag(victim.getUniqueId(), time);
+		}
+	}
+
+	/**
+	 * Toggles the PvP enabled state of the given player
+	 * Must be called on the main thread
+	 * @param player The player to toggle
+	 * @return The player's new PvP state
+	 */
+	public boolean togglePvP(@NotNull Player player) {
+		boolean enabled = !pvpEnabled.contains(player.getUniqueId());
+
+		applyPvPState(player, enabled, Instant.now());
+
+		if(loadShedder.isAtLeast(LoadShedder.Tier.CRITICAL)) {
+			pendingBroadcasts.put(player.getUniqueId(), enabled);
+		} else {
+			broadcastPvPStatus(player);
+		}
+
+		return enabled;
+	}
+
+	/**
+	 * Changes the PvP state of many players at once
+	 * All states are changed before any notifications are sent, and notifications are coalesced into a single pass
+	 * over the online players. Affected players are told who changed their state, and everyone else receives one
+	 * summary message per resulting state instead of one message per player.
+	 * @param players The players to change
+	 * @param action The change to make
+	 * @param source The name of whoever made the change
+	 * @return The number of players which ended up with PvP enabled and disabled
+	 */
+	public BulkResult bulkSetPvP(@NotNull Collection<? extends Player> players, @NotNull BulkAction action,
+								 @NotNull String source) {
+		Map<UUID, Boolean> changed = new HashMap<>(players.size());
+		Instant time = Instant.now();
+		int enabled = 0, disabled = 0;
+
+		for (Player player : players) {
+			boolean current = pvpEnabled.contains(player.getUniqueId());
+			boolean target = switch(action) {
+				case ENABLE -> true;
+				case DISABLE -> false;
+				case TOGGLE -> !current;
+			};
+
+			if(target) {
+				enabled++;
+			} else {
+				disabled++;
+			}
+
+			if(target != current) {
+				applyPvPState(player, target, time);
+				changed.put(player.getUniqueId(), target);
+			}
+		}
+
+		if(!changed.isEmpty()) {
+			broadcastBulkPvPStatus(changed, source);
+		}
+
+		return new BulkResult(enabled, disabled);
+	}
+
+	private void applyPvPState(Player player, boolean enabled, Instant time) {
+		clearState(player, false);
+		lastToggle.put(player.getUniqueId(), time);
+
+		if(journal != null) {
+			journal.appendToggle(player.getUniqueId(), time);
+		}
+
+		setStoredPvPState(player.getUniqueId(), enabled);
+		audit(AuditLog.Type.TOGGLE, player.getUniqueId(), null,
+			  enabled ? AuditLog.STATE_ENABLED : AuditLog.STATE_DISABLED);
+		updateNametag(player);
+
+		if(sync != null) {
+			sync.publishToggle(player.getUniqueId(), enabled);
+		}
+	}
+
+	private void broadcastBulkPvPStatus(Map<UUID, Boolean> changed, String source) {
+		long enabledCount = changed.values().stream().filter(Boolean::booleanValue).count();
+		long disabledCount = changed.size() - enabledCount;
+
+		Map<String, String> sourceReplacement = Collections.singletonMap("player", source);
+		Component forceEnabled = Messages.getComponent("pvp-force-enabled", sourceReplacement, Collections.emptyMap());
+		Component forceDisabled = Messages.getComponent("pvp-force-disabled", sourceReplacement, Collections.emptyMap());
+		Component notifyEnabled = Messages.getComponent("notify-pvp-bulk-enabled",
+														Map.of("count", String.valueOf(enabledCount),
+															   "player", source),
+														Collections.emptyMap());
+		Component notifyDisabled = Messages.getComponent("notify-pvp-bulk-disabled",
+														 Map.of("count", String.valueOf(disabledCount),
+																"player", source),
+														 Collections.emptyMap());
+
+		for (Player onlinePlayer : getServer().getOnlinePlayers()) {
+			Boolean state = changed.get(onlinePlayer.getUniqueId());
+
+			if(state != null) {
+				onlinePlayer.sendMessage(state ? forceEnabled : forceDisabled);
+				continue;
+			}
+
+			if(enabledCount > 0) {
+				onlinePlayer.sendMessage(notifyEnabled);
+			}
+
+			if(disabledCount > 0) {
+				onlinePlayer.sendMessage(notifyDisabled);
+			}
+		}
+	}
+
+	/**
+	 * Returns the total number of players matching the given list filter
+	 * Must be called on the main thread
+	 * @param filter The filter
+	 * @return The number of matching players
+	 */
+	public int countPlayers(ListFilter filter) {
+		return switch(filter) {
+			case ENABLED -> pvpEnabled.size();
+			case TAGGED -> lastDamage.size();
+			case DISABLED -> (int) getServer().getOnlinePlayers().stream()
+					.filter(player -> !pvpEnabled.contains(player.getUniqueId())).count();
+		};
+	}
+
+	/**
+	 * Returns one page of the players matching the given list filter
+	 * Players are read directly from the underlying state, skipping earlier pages without copying them.
+	 * Disabled players are limited to those currently online, as the disabled state is not stored.
+	 * When lazy loading, enabled players are limited to those currently in memory.
+	 * Must be called on the main thread
+	 * @param filter The filter
+	 * @param offset The number of matching players to skip
+	 * @param limit The maximum number of players to return
+	 * @return The matching player UUIDs
+	 */
+	public List<UUID> listPlayers(ListFilter filter, int offset, int limit) {
+		Iterator<UUID> iterator = switch(filter) {
+			case ENABLED -> pvpEnabled.iterator();
+			case TAGGED -> lastDamage.keySet().iterator();
+			case DISABLED -> getServer().getOnlinePlayers().stream()
+					.map(Player::getUniqueId)
+					.filter(uuid -> !pvpEnabled.contains(uuid)).iterator();
+		};
+
+		List<UUID> page = new ArrayList<>(limit);
+
+		for (int i = 0; i < offset && iterator.hasNext(); i++) {
+			iterator.next();
+		}
+
+		while(iterator.hasNext() && page.size() < limit) {
+			page.add(iterator.next());
+		}
+
+		return page;
+	}
+
+	/**
+	 * Sends the toggle broadcasts deferred while under critical load
+	 * A single deferred toggle is broadcast as normal, otherwise one summary message per resulting state is sent.
+	 */
+	private void flushBroadcasts() {
+		if(pendingBroadcasts.isEmpty()) {
+			return;
+		}
+
+		if(pendingBroadcasts.size() == 1) {
+			Player player = getServer().getPlayer(pendingBroadcasts.keySet().iterator().next());
+			pendingBroadcasts.clear();
+
+			if(player != null) {
+				broadcastPvPStatus(player);
+			}
+
+			return;
+		}
+
+		long enabledCount = pendingBroadcasts.values().stream().filter(Boolean::booleanValue).count();
+		long disabledCount = pendingBroadcasts.size() - enabledCount;
+		pendingBroadcasts.clear();
+
+		Component notifyEnabled = Messages.getComponent("notify-pvp-summary-enabled",
+														Collections.singletonMap("count", String.valueOf(enabledCount)),
+														Collections.emptyMap());
+		Component notifyDisabled = Messages.getComponent("notify-pvp-summary-disabled",
+														 Collections.singletonMap("count", String.valueOf(disabledCount)),
+														 Collections.emptyMap());
+
+		for (Player onlinePlayer : getServer().getOnlinePlayers()) {
+			if(enabledCount > 0) {
+				onlinePlayer.sendMessage(notifyEnabled);
+			}
+
+			if(disabledCount > 0) {
+				onlinePlayer.sendMessage(notifyDisabled);
+			}
+		}
+	}
+
+	private void broadcastPvPStatus(Player player) {
+		Component message = Messages.getComponent(hasPvPEnabled(player) ? "notify-pvp-enabled" : "notify-pvp-disabled",
+												  Collections.emptyMap(),
+												  Collections.singletonMap("player", player.displayName()));
+
+		for (Player onlinePlayer : getServer().getOnlinePlayers()) {
+			if(!onlinePlayer.equals(player) && onlinePlayer.canSee(player)) {
+				onlinePlayer.sendMessage(message);
+			}
+		}
+	}
+
+	/**
+	 * Clears the state of the given player. Their PvP status will not be affected.
+	 * @param player The player to clear
+	 */
+	public void clearPlayer(Player player) {
+		clearState(player, false);
+		updateNametag(player);
+	}
+
+	/**
+	 * Clears the state of the given player, who is leaving the server
+	 * When syncing, their combat tag is kept so it follows them to their next server, and expires as normal
+	 * @param player The leaving player
+	 */
+	void clearLeavingPlayer(Player player) {
+		clearState(player, sync != null);
+	}
+
+	private void clearState(Player player, boolean keepTag) {
+		Instant tag = keepTag ? lastDamage.get(player.getUniqueId()) : lastDamage.remove(player.getUniqueId());
+
+		if(!keepTag && tag != null && sync != null) {
+			sync.publishTagCleared(player.getUniqueId());
+		}
+
+		lastMessage.remove(player);
+		lastToggle.remove(player.getUniqueId());
+		lastAttackers.remove(player.getUniqueId());
+
+		if(journal != null) {
+			journal.appendClear(player.getUniqueId());
+
+			if(keepTag && tag != null) {
+				journal.appendTag(player.getUniqueId(), tag);
+			}
+		}
+	}
+
+	/**
+	 * Returns the player "responsible" for the given entity, if any
+	 * If the entity is a player then the player is returned
+	 * If the entity is a projectile then the shooter is returned if it was a player
+	 * If the entity is tnt then the source is returned if it was a player
+	 * If the entity is tamed or otherwise player controlled then the owner is returned if they are online
+	 * @param entity The entity to check
+	 * @return The player
+	 */
+	Optional<OfflinePlayer> getResponsiblePlayer(Entity entity) {
+		Profiling.AttributionEvent event = Profiling.beginAttribution();
+
+		if(event == null) {
+			return resolveResponsiblePlayer(entity);
+		}
+
+		Optional<OfflinePlayer> player = resolveResponsiblePlayer(entity);
+
+		event.entityType = entity.getType().name();
+		event.resolved = player.isPresent();
+		Profiling.commit(event);
+
+		return player;
+	}
+
+	private Optional<OfflinePlayer> resolveResponsiblePlayer(Entity entity) {
 		if(entity instanceof Player player) {
 			return Optional.of(player);
 		}
@@ -351,10 +1566,11 @@ public final class PvP extends JavaPlugin implements Listener {
 			}
 		}
 
-		if(entity instanceof Wolf wolf) {
-			if(wolf.getOwner() instanceof Player player) {
-				return Optional.of(player);
-			}
+		if(entity instanceof Tameable || entity instanceof Vex) {
+			UUID owner = getOwnerId(entity);
+			Player player = owner != null ? getServer().getPlayer(owner) : null;
+
+			return Optional.ofNullable(player);
 		}
 
 		if(entity instanceof LightningStrike lightning) {
@@ -363,38 +1579,525 @@ public final class PvP extends JavaPlugin implements Listener {
 			}
 		}
 
+		UUID responsible = getResponsibleMetadata(entity);
+
+		if(responsible != null) {
+			return Optional.of(getServer().getOfflinePlayer(responsible));
+		}
+
+		return Optional.empty();
+	}
+
+	/**
+	 * Returns the UUID of the player controlling the given entity, if any, without performing any player lookups
+	 * Tamed entities return their owner, vexes return the owner of their summoner, and other entities return
+	 * any player recorded as responsible for them, such as the builder of an iron golem
+	 * @param entity The entity to check
+	 * @return The owner's UUID, or null
+	 */
+	@Nullable UUID getOwnerId(Entity entity) {
+		if(entity instanceof Tameable tameable) {
+			return tameable.getOwnerUniqueId();
+		}
+
+		if(entity instanceof Vex vex) {
+			Mob summoner = vex.getSummoner();
+			return summoner != null && !(summoner instanceof Vex) ? getOwnerId(summoner) : null;
+		}
+
+		return getResponsibleMetadata(entity);
+	}
+
+	private @Nullable UUID getResponsibleMetadata(Entity entity) {
 		Optional<MetadataValue> responsibleMeta = entity.getMetadata("responsible").stream()
 				.filter(v -> Objects.equals(v.getOwningPlugin(), this))
 				.findFirst();
 
 		if(responsibleMeta.isPresent() && responsibleMeta.get().value() instanceof UUID uuid) {
-			return Optional.of(getServer().getOfflinePlayer(uuid));
+			return uuid;
 		}
 
-		return Optional.empty();
+		return null;
 	}
 
 	private void loadPvPStates() {
+		Profiling.PersistenceEvent event = Profiling.beginPersistence("load");
 		pvpEnabled.clear();
 
-		FileConfiguration data = YamlConfiguration.loadConfiguration(new File(getDataFolder(), "data.yml"));
+		if(config.getBoolean("storage.lazy-loading")) {
+			initStateStore();
+		} else {
+			pvpEnabled.addAll(readDataFile());
+			migrateStateStore();
+		}
+
+		if(event != null) {
+			event.players = pvpEnabled.size();
+			Profiling.commit(event);
+		}
+	}
 
+	private List<UUID> readDataFile() {
+		FileConfiguration data = YamlConfiguration.loadConfiguration(new File(getDataFolder(), "data.yml"));
 		List<?> enabled = data.getList("pvp-enabled", Collections.emptyList());
+		List<UUID> uuids = new ArrayList<>(enabled.size());
 
 		for (Object uuid : enabled) {
 			try {
-				pvpEnabled.add(UUID.fromString(uuid.toString()));
+				uuids.add(UUID.fromString(uuid.toString()));
 			} catch(IllegalArgumentException e) {
 				getLogger().warning("Ignoring invalid uuid in pvp-enabled config: " + uuid);
 			}
 		}
+
+		return uuids;
+	}
+
+	private void initStateStore() {
+		PvPStateStore store = new PvPStateStore(new File(getDataFolder(), "states").toPath(), getLogger());
+
+		if(!store.exists()) {
+			List<UUID> enabled = readDataFile();
+
+			try {
+				store.create(enabled);
+				getLogger().info("Moved " + enabled.size() + " PvP states from data.yml to the states folder");
+			} catch(IOException e) {
+				getLogger().log(Level.SEVERE, "Failed to create PvP state store, falling back to data.yml", e);
+				pvpEnabled.addAll(enabled);
+				return;
+			}
+		}
+
+		stateStore = store;
+
+		getServer().getScheduler().scheduleSyncRepeatingTask(this, this::evictPlayerStates, 20L, 20L);
+	}
+
+	/**
+	 * Moves states back from the state store into data.yml, if lazy loading was previously enabled
+	 * data.yml is not written while the store is in use, so would otherwise restore outdated states
+	 */
+	private void migrateStateStore() {
+		PvPStateStore store = new PvPStateStore(new File(getDataFolder(), "states").toPath(), getLogger());
+
+		try {
+			if(!store.exists()) {
+				return;
+			}
+
+			List<UUID> enabled;
+
+			try {
+				enabled = store.readAll();
+			} catch(IOException e) {
+				//data.yml is older than the store, so restoring it could silently re-enable PvP for some players
+				pvpEnabled.clear();
+				getLogger().log(Level.SEVERE, "Failed to read the states folder, so outdated PvP states in data.yml "
+						+ "have not been loaded and PvP is disabled for all players", e);
+				return;
+			}
+
+			pvpEnabled.clear();
+			pvpEnabled.addAll(enabled);
+
+			if(!savePvPStates()) {
+				getLogger().severe("Failed to move PvP states back to data.yml, the states folder has been kept");
+				return;
+			}
+
+			try {
+				store.delete();
+				getLogger().info("Moved " + enabled.size() + " PvP states from the states folder back to data.yml");
+			} catch(IOException e) {
+				getLogger().log(Level.SEVERE, "Moved PvP states back to data.yml but failed to delete the states "
+						+ "folder. Delete it before restarting, or outdated states will be restored from it", e);
+			}
+		} finally {
+			store.close();
+		}
+	}
+
+	/**
+	 * Loads the stored PvP state of a player who is logging in, ready for when they join
+	 * Called on the async pre-login thread, which is blocked until the state has been read
+	 * @param uuid The player's UUID
+	 */
+	void preloadPlayerState(UUID uuid) {
+		PvPStateStore stateStore = this.stateStore;
+
+		if(stateStore == null) {
+			return;
+		}
+
+		//Added before reading, so any change made while the read is in progress is kept instead of the read state
+		preloadedStates.put(uuid, new PreloadedState(null, System.currentTimeMillis()));
+
+		try {
+			boolean enabled = stateStore.read(uuid).get(5, TimeUnit.SECONDS);
+			preloadedStates.computeIfPresent(uuid, (key, state) -> state.enabled() == null
+					? new PreloadedState(enabled, state.loadedAt()) : state);
+		} catch(ExecutionException | TimeoutException e) {
+			getLogger().log(Level.WARNING, "Failed to load PvP state of " + uuid + " during login", e);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Makes the given joining player's PvP state resident, using the state loaded during login
+	 * @param uuid The player's UUID
+	 */
+	private void loadResidentState(UUID uuid) {
+		evictions.remove(uuid);
+
+		boolean wasResident = !residentPlayers.add(uuid);
+		PreloadedState preloaded = preloadedStates.remove(uuid);
+		Boolean enabled = preloaded != null ? preloaded.enabled() : null;
+
+		//The login thread failed to load the state, or the player was already online when the plugin was enabled
+		if(enabled == null && !wasResident) {
+			pvpEnabled.remove(uuid);
+			readResidentState(uuid);
+			return;
+		}
+
+		if(enabled != null) {
+			if(enabled) {
+				pvpEnabled.add(uuid);
+			} else {
+				pvpEnabled.remove(uuid);
+			}
+		}
+	}
+
+	/**
+	 * Reads the given resident player's stored state without blocking, treating PvP as disabled until it is applied
+	 * The result is discarded if the player's state is changed or evicted before the read completes
+	 * @param uuid The player's UUID
+	 */
+	private void readResidentState(UUID uuid) {
+		long readId = ++lastReadId;
+		pendingReads.put(uuid, readId);
+
+		stateStore.read(uuid).thenAccept(enabled -> {
+			if(!isEnabled()) {
+				return;
+			}
+
+			getServer().getScheduler().runTask(this, () -> {
+				if(!pendingReads.remove(uuid, readId) || !residentPlayers.contains(uuid)) {
+					return;
+				}
+
+				if(enabled) {
+					pvpEnabled.add(uuid);
+				} else {
+					pvpEnabled.remove(uuid);
+				}
+
+				Player player = getServer().getPlayer(uuid);
+
+				if(player != null) {
+					updateNametag(player);
+				}
+			});
+		});
+	}
+
+	/**
+	 * Removes the PvP states of players who left long enough ago from memory, along with any states loaded for
+	 * logins which never completed
+	 */
+	private void evictPlayerStates() {
+		long now = System.currentTimeMillis();
+
+		evictions.entrySet().removeIf(entry -> {
+			if(entry.getValue() > now) {
+				return false;
+			}
+
+			residentPlayers.remove(entry.getKey());
+			pvpEnabled.remove(entry.getKey());
+			return true;
+		});
+
+		preloadedStates.values().removeIf(state -> now - state.loadedAt() > PRELOAD_TIMEOUT_MILLIS);
+	}
+
+	private void initNameCache() {
+		nameCache = new NameCache(new File(getDataFolder(), "names.txt").toPath(), getLogger());
+
+		//Players already online (i.e. after a reload) are added immediately, the rest of the cache is loaded async
+		for (Player player : getServer().getOnlinePlayers()) {
+			nameCache.update(player.getUniqueId(), player.getName());
+		}
+
+		getServer().getScheduler().runTaskAsynchronously(this, nameCache::load);
+	}
+
+	private void initNametags() {
+		if(!config.getBoolean("nametags.enabled")) {
+			return;
+		}
+
+		Map<NametagTeams.State, String> colours = new EnumMap<>(NametagTeams.State.class);
+		colours.put(NametagTeams.State.ENABLED, config.getString("nametags.enabled-colour"));
+		colours.put(NametagTeams.State.DISABLED, config.getString("nametags.disabled-colour"));
+		colours.put(NametagTeams.State.TAGGED, config.getString("nametags.tagged-colour"));
+
+		nametags = new NametagTeams(getServer().getScoreboardManager().getMainScoreboard(), colours, getLogger());
+
+		for (Player player : getServer().getOnlinePlayers()) {
+			updateNametag(player);
+		}
+	}
+
+	/**
+	 * Updates the nametag team of the given player to match their current state, if nametags are enabled
+	 * Nothing is sent if the player's state has not changed
+	 * @param player The player to update
+	 */
+	void updateNametag(Player player) {
+		if(nametags == null) {
+			return;
+		}
+
+		NametagTeams.State state;
+
+		if(lastDamage.containsKey(player.getUniqueId())) {
+			state = NametagTeams.State.TAGGED;
+		} else if(pvpEnabled.contains(player.getUniqueId())) {
+			state = NametagTeams.State.ENABLED;
+		} else {
+			state = NametagTeams.State.DISABLED;
+		}
+
+		nametags.update(player, state);
+	}
+
+	/**
+	 * Removes the given player from the nametag teams, if nametags are enabled
+	 * @param player The player to remove
+	 */
+	void removeNametag(Player player) {
+		if(nametags != null) {
+			nametags.remove(player);
+		}
+	}
+
+	private void initAuditLog() {
+		if(!config.getBoolean("audit.enabled")) {
+			return;
+		}
+
+		AuditLog auditLog = new AuditLog(new File(getDataFolder(), "audit").toPath(),
+										 Math.max(64, config.getInt("audit.buffer-size")),
+										 Math.max(1, config.getLong("audit.max-file-size")) * 1024L,
+										 Math.max(60, config.getLong("audit.rotate-interval")) * 1000L,
+										 getLogger());
+
+		try {
+			auditLog.start();
+			this.auditLog = auditLog;
+		} catch (IOException e) {
+			getLogger().severe("Failed to start audit log");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Returns the audit log, if enabled
+	 * @return The audit log, or null if disabled
+	 */
+	public @Nullable AuditLog getAuditLog() {
+		return auditLog;
+	}
+
+	private void initSync() {
+		if(!config.getBoolean("sync.enabled")) {
+			return;
+		}
+
+		String transportName = config.getString("sync.transport", "plugin-messaging");
+		SyncTransport transport;
+
+		if(transportName.equalsIgnoreCase("loopback")) {
+			transport = new LoopbackTransport.Network().createTransport();
+		} else {
+			if(!transportName.equalsIgnoreCase("plugin-messaging")) {
+				getLogger().warning("Unknown sync transport " + transportName + ", using plugin-messaging");
+			}
+
+			transport = new PluginMessageTransport(this);
+		}
+
+		sync = new StateSync(transport, new StateSync.Target() {
+			@Override
+			public void applyToggle(UUID uuid, boolean enabled) {
+				setStoredPvPState(uuid, enabled);
+
+				Player player = getServer().getPlayer(uuid);
+
+				if(player != null) {
+					updateNametag(player);
+				}
+			}
+
+			@Override
+			public void applyTag(UUID uuid, Instant time) {
+				Instant current = lastDamage.get(uuid);
+
+				if(getRemainingCooldown(time) == 0 || (current != null && !time.isAfter(current))) {
+					return;
+				}
+
+				lastDamage.put(uuid, time);
+
+				if(journal != null) {
+					journal.appendTag(uuid, time);
+				}
+
+				Player player = getServer().getPlayer(uuid);
+
+				if(player != null) {
+					updateNametag(player);
+				}
+			}
+
+			@Override
+			public void clearTag(UUID uuid) {
+				if(lastDamage.remove(uuid) == null) {
+					return;
+				}
+
+				if(journal != null) {
+					journal.appendClear(uuid);
+				}
+
+				Player player = getServer().getPlayer(uuid);
+
+				if(player != null) {
+					updateNametag(player);
+				}
+			}
+
+			@Override
+			public void applyPunishment(UUID uuid, boolean pending) {
+				if(!pending) {
+					if(pendingPunishments.remove(uuid) != null && journal != null) {
+						journal.appendPunishmentServed(uuid);
+					}
+
+					return;
+				}
+
+				Player player = getServer().getPlayer(uuid);
+
+				//The player already joined this server before the punishment arrived
+				if(player != null) {
+					servePunishment(player);
+					return;
+				}
+
+				Instant now = Instant.now();
+
+				if(pendingPunishments.putIfAbsent(uuid, now) == null && journal != null) {
+					journal.appendPunishment(uuid, now);
+				}
+			}
+		}, config.getInt("sync.max-batch-size"), config.getLong("sync.switch-grace") * 1000, getLogger());
+
+		long interval = Math.max(1, config.getLong("sync.batch-interval"));
+		getServer().getScheduler().scheduleSyncRepeatingTask(this, () -> {
+			sync.flush();
+
+			for (UUID uuid : sync.expireDepartures(System.currentTimeMillis())) {
+				punishDeparted(uuid);
+			}
+		}, interval, interval);
+	}
+
+	private void initStats() {
+		if(!config.getBoolean("stats.enabled")) {
+			return;
+		}
+
+		stats = new PvPStats(new File(getDataFolder(), "stats.dat").toPath(),
+							 Math.max(1, config.getInt("stats.leaderboard-size")), getLogger());
+		stats.load();
+	}
+
+	private void initJournal() {
+		if(!config.getBoolean("journal.enabled")) {
+			return;
+		}
+
+		journal = new CombatJournal(new File(getDataFolder(), "journal.dat").toPath(), getLogger());
+		journal.replay(Instant.now().minusSeconds(config.getInt("pvp-timeout")), new CombatJournal.ReplayTarget() {
+			@Override
+			public void restoreTag(UUID uuid, Instant time) {
+				lastDamage.put(uuid, time);
+			}
+
+			@Override
+			public void restoreToggle(UUID uuid, Instant time) {
+				lastToggle.put(uuid, time);
+			}
+
+			@Override
+			public void restorePunishment(UUID uuid, Instant time) {
+				pendingPunishments.put(uuid, time);
+			}
+		});
+
+		try {
+			journal.start(Math.max(50, config.getLong("journal.flush-interval")));
+		} catch (IOException e) {
+			getLogger().severe("Failed to open combat journal, combat tags will not survive restarts");
+			e.printStackTrace();
+			journal = null;
+			return;
+		}
+
+		compactJournal();
+
+		long compactInterval = Math.max(1, config.getLong("journal.compact-interval")) * 20L;
+		getServer().getScheduler().scheduleSyncRepeatingTask(this, this::compactJournal, compactInterval, compactInterval);
+	}
+
+	private void compactJournal() {
+		//Only unexpired entries are kept, so the journal stays proportional to recently active players
+		Map<UUID, Instant> tags = new HashMap<>();
+		Map<UUID, Instant> toggles = new HashMap<>();
+
+		lastDamage.forEach((uuid, time) -> {
+			if(getRemainingCooldown(time) > 0) {
+				tags.put(uuid, time);
+			}
+		});
+
+		lastToggle.forEach((uuid, time) -> {
+			if(getRemainingCooldown(time) > 0) {
+				toggles.put(uuid, time);
+			}
+		});
+
+		journal.compact(tags, toggles, new HashMap<>(pendingPunishments));
 	}
 
 	private boolean savePvPStates() {
+		//The state store is written as states change
+		if(stateStore != null) {
+			return true;
+		}
+
+		Profiling.PersistenceEvent event = Profiling.beginPersistence("save");
 		File dataFile = new File(getDataFolder(), "data.yml");
 		FileConfiguration data = new YamlConfiguration();
+		List<String> enabled = pvpEnabled.stream().map(UUID::toString).collect(Collectors.toList());
 
-		data.set("pvp-enabled", pvpEnabled.stream().map(UUID::toString).collect(Collectors.toList()));
+		data.set("pvp-enabled", enabled);
 
 		try {
 			data.save(dataFile);
@@ -403,11 +2106,21 @@ public final class PvP extends JavaPlugin implements Listener {
 			getLogger().severe( "Failed to save player PvP statuses");
 			e.printStackTrace();
 			return false;
+		} finally {
+			if(event != null) {
+				event.players = enabled.size();
+				Profiling.commit(event);
+			}
 		}
 	}
 
+	/**
+	 * Reloads config.yml and messages.yml, and starts or stops the config watcher as needed
+	 * Must be called on the main thread
+	 */
 	void reload() {
 		reloadConfig();
 		initConfig();
+		updateConfigWatcher();
 	}
 }
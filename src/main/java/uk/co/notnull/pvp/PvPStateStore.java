@@ -0,0 +1,165 @@
+package uk.co.notnull.pvp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * On-disk store of PvP states, for loading players individually instead of holding every state in memory
+ * Each player with PvP enabled has an empty marker file, sharded into folders by the first two characters of their
+ * UUID, so the filesystem acts as the index and a lookup touches a single small directory. All reads and writes run
+ * in order on one background thread, so a read always sees every write queued before it.
+ */
+public final class PvPStateStore {
+	private final Path folder;
+	private final Logger logger;
+	private final ExecutorService executor;
+
+	public PvPStateStore(Path folder, Logger logger) {
+		this.folder = folder;
+		this.logger = logger;
+		this.executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "PvP State Store");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Returns whether the store has been created
+	 * @return Whether the store folder exists
+	 */
+	public boolean exists() {
+		return Files.isDirectory(folder);
+	}
+
+	/**
+	 * Creates the store, containing the given players with PvP enabled. Blocks until complete.
+	 * @param enabled The UUIDs of players with PvP enabled
+	 * @throws IOException If the store could not be created
+	 */
+	public void create(Collection<UUID> enabled) throws IOException {
+		Path temp = folder.resolveSibling(folder.getFileName() + ".tmp");
+
+		for (UUID uuid : enabled) {
+			Path file = getPath(temp, uuid);
+			Files.createDirectories(file.getParent());
+
+			if(!Files.exists(file)) {
+				Files.createFile(file);
+			}
+		}
+
+		Files.createDirectories(temp);
+		Files.move(temp, folder);
+	}
+
+	/**
+	 * Reads the UUIDs of every player with PvP enabled. Blocks until complete.
+	 * @return The UUIDs of players with PvP enabled
+	 * @throws IOException If the store could not be read
+	 */
+	public List<UUID> readAll() throws IOException {
+		List<UUID> enabled = new ArrayList<>();
+
+		try(Stream<Path> files = Files.walk(folder, 2)) {
+			for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+				try {
+					enabled.add(UUID.fromString(file.getFileName().toString()));
+				} catch(IllegalArgumentException e) {
+					logger.warning("Ignoring unexpected file in PvP state store: " + file);
+				}
+			}
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		return enabled;
+	}
+
+	/**
+	 * Deletes the store and everything in it. Blocks until complete.
+	 * @throws IOException If the store could not be deleted
+	 */
+	public void delete() throws IOException {
+		List<Path> paths;
+
+		try(Stream<Path> files = Files.walk(folder)) {
+			paths = files.sorted(Comparator.reverseOrder()).toList();
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		//Children are sorted before their parent folders, so each folder is empty when it is deleted
+		for (Path path : paths) {
+			Files.delete(path);
+		}
+	}
+
+	/**
+	 * Reads the stored state of the given player
+	 * @param uuid The player's UUID
+	 * @return Future completed on the store thread with whether PvP is enabled
+	 */
+	public CompletableFuture<Boolean> read(UUID uuid) {
+		return CompletableFuture.supplyAsync(() -> Files.exists(getPath(folder, uuid)), executor);
+	}
+
+	/**
+	 * Queues a change to the stored state of the given player
+	 * @param uuid The player's UUID
+	 * @param enabled The new state
+	 */
+	public void write(UUID uuid, boolean enabled) {
+		executor.execute(() -> {
+			Path file = getPath(folder, uuid);
+
+			try {
+				if(enabled) {
+					Files.createDirectories(file.getParent());
+
+					if(!Files.exists(file)) {
+						Files.createFile(file);
+					}
+				} else {
+					Files.deleteIfExists(file);
+				}
+			} catch(IOException e) {
+				logger.log(Level.SEVERE, "Failed to store PvP state of " + uuid, e);
+			}
+		});
+	}
+
+	/**
+	 * Completes all queued writes and stops the store thread
+	 */
+	public void close() {
+		executor.shutdown();
+
+		try {
+			if(!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+				logger.warning("Timed out waiting for PvP state writes to finish");
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static Path getPath(Path folder, UUID uuid) {
+		String name = uuid.toString();
+		return folder.resolve(name.substring(0, 2)).resolve(name);
+	}
+}
@@ -0,0 +1,324 @@
+package uk.co.notnull.pvp;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Per-player PvP statistics, with an incrementally maintained kill leaderboard
+ * The leaderboard is an ordered set which is updated in O(log n) per kill, and the top entries are cached in an
+ * array which can be read cheaply from any thread. Players without any kills are left off the leaderboard.
+ * All other methods must be called on the main thread.
+ */
+public final class PvPStats {
+	private static final int FILE_VERSION = 1;
+
+	private static final Comparator<PlayerStats> LEADERBOARD_ORDER =
+			Comparator.comparingInt((PlayerStats stats) -> stats.kills).reversed()
+					.thenComparingInt(stats -> stats.deaths)
+					.thenComparing(stats -> stats.uuid);
+
+	private final Path path;
+	private final Logger logger;
+	private final int topSize;
+	private final Map<UUID, PlayerStats> stats = new ConcurrentHashMap<>();
+	private final TreeSet<PlayerStats> leaderboard = new TreeSet<>(LEADERBOARD_ORDER);
+	private volatile TopEntry[] top = new TopEntry[0];
+	private volatile boolean dirty = false;
+	private long snapshotSequence = 0;
+	private long writtenSequence = 0;
+
+	/**
+	 * Mutable statistics for a single player
+	 * Fields may be read from any thread, but are only written on the main thread
+	 */
+	public static final class PlayerStats {
+		private final UUID uuid;
+		private volatile int kills;
+		private volatile int deaths;
+		private volatile int streak;
+		private volatile int bestStreak;
+		private volatile int punishments;
+
+		private PlayerStats(UUID uuid) {
+			this.uuid = uuid;
+		}
+
+		public UUID getUUID() {
+			return uuid;
+		}
+
+		public int getKills() {
+			return kills;
+		}
+
+		public int getDeaths() {
+			return deaths;
+		}
+
+		public int getStreak() {
+			return streak;
+		}
+
+		public int getBestStreak() {
+			return bestStreak;
+		}
+
+		public int getPunishments() {
+			return punishments;
+		}
+	}
+
+	/**
+	 * Immutable snapshot of a leaderboard position
+	 */
+	public record TopEntry(UUID uuid, int kills) {
+	}
+
+	public PvPStats(Path path, int topSize, Logger logger) {
+		this.path = path;
+		this.topSize = topSize;
+		this.logger = logger;
+	}
+
+	/**
+	 * Returns the statistics of the given player, if they have any
+	 * @param uuid The player's UUID
+	 * @return The statistics, or null
+	 */
+	public @Nullable PlayerStats get(UUID uuid) {
+		return stats.get(uuid);
+	}
+
+	/**
+	 * Returns the entry at the given leaderboard position, if any. Safe to call from any thread.
+	 * @param position The 1-based position, which must be within the configured leaderboard size
+	 * @return The entry, or null
+	 */
+	public @Nullable TopEntry getTop(int position) {
+		TopEntry[] top = this.top;
+		return position >= 1 && position <= top.length ? top[position - 1] : null;
+	}
+
+	/**
+	 * Returns the number of players on the leaderboard
+	 * @return The number of players
+	 */
+	public int getLeaderboardSize() {
+		return leaderboard.size();
+	}
+
+	/**
+	 * Returns a page of the leaderboard, skipping earlier positions without copying them
+	 * @param offset The number of positions to skip
+	 * @param limit The maximum number of entries to return
+	 * @return The entries
+	 */
+	public List<PlayerStats> getLeaderboard(int offset, int limit) {
+		List<PlayerStats> page = new ArrayList<>(limit);
+		Iterator<PlayerStats> iterator = leaderboard.iterator();
+
+		for (int i = 0; i < offset && iterator.hasNext(); i++) {
+			iterator.next();
+		}
+
+		while(iterator.hasNext() && page.size() < limit) {
+			page.add(iterator.next());
+		}
+
+		return page;
+	}
+
+	/**
+	 * Records a PvP kill
+	 * @param killer The killer's UUID
+	 * @param victim The victim's UUID
+	 */
+	public void recordKill(UUID killer, UUID victim) {
+		update(killer, stats -> {
+			stats.kills++;
+			stats.streak++;
+			stats.bestStreak = Math.max(stats.bestStreak, stats.streak);
+		});
+
+		update(victim, stats -> {
+			stats.deaths++;
+			stats.streak = 0;
+		});
+	}
+
+	/**
+	 * Records a punishment for leaving during a PvP fight
+	 * @param uuid The player's UUID
+	 */
+	public void recordPunishment(UUID uuid) {
+		update(uuid, stats -> {
+			stats.punishments++;
+			stats.streak = 0;
+		});
+	}
+
+	private void update(UUID uuid, Consumer<PlayerStats> change) {
+		PlayerStats playerStats = stats.computeIfAbsent(uuid, PlayerStats::new);
+
+		//Ordering fields are about to change, so the entry must be removed and reinserted
+		leaderboard.remove(playerStats);
+		int previousKills = playerStats.kills;
+		change.accept(playerStats);
+
+		if(playerStats.kills > 0) {
+			leaderboard.add(playerStats);
+		}
+
+		dirty = true;
+
+		if(previousKills != playerStats.kills || isInTop(uuid)) {
+			refreshTop();
+		}
+	}
+
+	private boolean isInTop(UUID uuid) {
+		for (TopEntry entry : top) {
+			if(entry.uuid().equals(uuid)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private void refreshTop() {
+		TopEntry[] top = new TopEntry[Math.min(topSize, leaderboard.size())];
+		Iterator<PlayerStats> iterator = leaderboard.iterator();
+
+		for (int i = 0; i < top.length; i++) {
+			PlayerStats entry = iterator.next();
+			top[i] = new TopEntry(entry.uuid, entry.kills);
+		}
+
+		this.top = top;
+	}
+
+	/**
+	 * Loads statistics from disk, replacing any current statistics
+	 */
+	public void load() {
+		stats.clear();
+		leaderboard.clear();
+
+		if(Files.exists(path)) {
+			try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+				int version = input.readInt();
+
+				if(version != FILE_VERSION) {
+					throw new IOException("Unsupported stats file version " + version);
+				}
+
+				int count = input.readInt();
+
+				for (int i = 0; i < count; i++) {
+					PlayerStats playerStats = new PlayerStats(new UUID(input.readLong(), input.readLong()));
+					playerStats.kills = input.readInt();
+					playerStats.deaths = input.readInt();
+					playerStats.streak = input.readInt();
+					playerStats.bestStreak = input.readInt();
+					playerStats.punishments = input.readInt();
+
+					stats.put(playerStats.uuid, playerStats);
+
+					if(playerStats.kills > 0) {
+						leaderboard.add(playerStats);
+					}
+				}
+			} catch(EOFException e) {
+				logger.warning("Stats file is truncated, some statistics may have been lost");
+			} catch(IOException e) {
+				logger.log(Level.SEVERE, "Failed to load PvP statistics", e);
+			}
+		}
+
+		refreshTop();
+	}
+
+	/**
+	 * Takes a snapshot of the current statistics for saving, if they have changed since the last snapshot
+	 * If writing the snapshot fails, the statistics are considered changed again so the next save retries.
+	 * Snapshots are numbered, so a snapshot whose write finishes after a newer one's is not written over it
+	 * @return A task which writes the snapshot and may be run on any thread, or null if nothing has changed
+	 */
+	public @Nullable Runnable prepareSave() {
+		if(!dirty) {
+			return null;
+		}
+
+		dirty = false;
+		long sequence = ++snapshotSequence;
+		List<int[]> values = new ArrayList<>(stats.size());
+		List<UUID> uuids = new ArrayList<>(stats.size());
+
+		for (PlayerStats playerStats : stats.values()) {
+			uuids.add(playerStats.uuid);
+			values.add(new int[] {playerStats.kills, playerStats.deaths, playerStats.streak,
+					playerStats.bestStreak, playerStats.punishments});
+		}
+
+		return () -> {
+			if(!write(sequence, uuids, values)) {
+				dirty = true;
+			}
+		};
+	}
+
+	private synchronized boolean write(long sequence, List<UUID> uuids, List<int[]> values) {
+		if(sequence <= writtenSequence) {
+			return true;
+		}
+
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+		try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			output.writeInt(FILE_VERSION);
+			output.writeInt(uuids.size());
+
+			for (int i = 0; i < uuids.size(); i++) {
+				output.writeLong(uuids.get(i).getMostSignificantBits());
+				output.writeLong(uuids.get(i).getLeastSignificantBits());
+
+				for (int value : values.get(i)) {
+					output.writeInt(value);
+				}
+			}
+		} catch(IOException e) {
+			logger.log(Level.SEVERE, "Failed to save PvP statistics", e);
+			return false;
+		}
+
+		try {
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			writtenSequence = sequence;
+			return true;
+		} catch(IOException e) {
+			logger.log(Level.SEVERE, "Failed to replace PvP statistics file", e);
+			return false;
+		}
+	}
+}
@@ -0,0 +1,367 @@
+package uk.co.notnull.pvp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Propagates PvP toggles, combat tags and pending punishments between servers as compact deltas
+ * Local changes are queued and coalesced per player, then sent in batches when {@link #flush()} is called, so a
+ * burst of toggles or hits results in a bounded number of messages. Every change carries a version stamp made of a
+ * hybrid logical clock and a server id, and remote changes are only applied if their stamp is newer than the last
+ * change seen for that player, so all servers converge on the same state regardless of delivery order.
+ * Servers also announce players as they arrive. A player who leaves while tagged is recorded as departed, and is
+ * only considered to have left the network if no server announces their arrival within the switch grace period.
+ * Their punishment is then shared with every server, so it is served by whichever server they join next.
+ * Stamps are forgotten once they are older than the retention period, and changes older than that are ignored, so
+ * memory use follows recently active players rather than every player ever seen.
+ * Must only be used on the main thread.
+ */
+public final class StateSync {
+	private static final int PROTOCOL_VERSION = 1;
+	private static final byte TYPE_TOGGLE = 0;
+	private static final byte TYPE_TAG = 1;
+	private static final byte TYPE_ARRIVAL = 2;
+	private static final byte TYPE_PUNISHMENT = 3;
+	private static final long NO_TAG = 0;
+	private static final long STAMP_RETENTION_MILLIS = 600000;
+
+	//Header of protocol version, origin and count, followed by entries of type, uuid, stamp and value
+	private static final int HEADER_SIZE = 1 + 8 + 2;
+	private static final int ENTRY_SIZE = 1 + 16 + 8 + 8;
+
+	public interface Target {
+		void applyToggle(UUID uuid, boolean enabled);
+
+		void applyTag(UUID uuid, Instant time);
+
+		void clearTag(UUID uuid);
+
+		void applyPunishment(UUID uuid, boolean pending);
+	}
+
+	private record Delta(byte type, UUID uuid, long stamp, long value) {
+	}
+
+	private final SyncTransport transport;
+	private final Target target;
+	private final int maxBatchSize;
+	private final long switchGraceMillis;
+	private final Logger logger;
+	private final long origin;
+	private final LongSupplier wallClock;
+
+	private long clock = 0;
+	private long lastEviction = 0;
+	private final Map<UUID, Long> toggleStamps = new HashMap<>();
+	private final Map<UUID, Long> tagStamps = new HashMap<>();
+	private final Map<UUID, Long> punishmentStamps = new HashMap<>();
+	private final Map<UUID, Delta> pendingToggles = new LinkedHashMap<>();
+	private final Map<UUID, Delta> pendingTags = new LinkedHashMap<>();
+	private final Map<UUID, Delta> pendingArrivals = new LinkedHashMap<>();
+	private final Map<UUID, Delta> pendingPunishments = new LinkedHashMap<>();
+	private final Map<UUID, Long> departures = new HashMap<>();
+	private final Map<UUID, Long> arrivals = new HashMap<>();
+
+	public StateSync(SyncTransport transport, Target target, int maxBatchSize, long switchGraceMillis,
+					 Logger logger) {
+		this(transport, target, maxBatchSize, switchGraceMillis, logger, ThreadLocalRandom.current().nextLong(),
+			 System::currentTimeMillis);
+	}
+
+	StateSync(SyncTransport transport, Target target, int maxBatchSize, long switchGraceMillis, Logger logger,
+			  long origin, LongSupplier wallClock) {
+		this.transport = transport;
+		this.target = target;
+		this.maxBatchSize = Math.max(1, Math.min(maxBatchSize, (Short.MAX_VALUE - HEADER_SIZE) / ENTRY_SIZE));
+		this.switchGraceMillis = Math.max(0, switchGraceMillis);
+		this.logger = logger;
+		this.origin = origin;
+		this.wallClock = wallClock;
+
+		transport.setReceiver(this::receive);
+	}
+
+	/**
+	 * Queues a local PvP state change for sending
+	 * @param uuid The player's UUID
+	 * @param enabled The new state
+	 */
+	public void publishToggle(UUID uuid, boolean enabled) {
+		long stamp = nextStamp();
+
+		toggleStamps.put(uuid, stamp);
+		pendingToggles.put(uuid, new Delta(TYPE_TOGGLE, uuid, stamp, enabled ? 1 : 0));
+	}
+
+	/**
+	 * Queues a local combat tag for sending
+	 * @param uuid The player's UUID
+	 * @param time The time the player was tagged
+	 */
+	public void publishTag(UUID uuid, Instant time) {
+		long stamp = nextStamp();
+
+		tagStamps.put(uuid, stamp);
+		pendingTags.put(uuid, new Delta(TYPE_TAG, uuid, stamp, time.toEpochMilli()));
+	}
+
+	/**
+	 * Queues the end of a local combat tag for sending, such as after a death
+	 * @param uuid The player's UUID
+	 */
+	public void publishTagCleared(UUID uuid) {
+		long stamp = nextStamp();
+
+		tagStamps.put(uuid, stamp);
+		pendingTags.put(uuid, new Delta(TYPE_TAG, uuid, stamp, NO_TAG));
+	}
+
+	/**
+	 * Forgets the version stamp of the given player's combat tag, once it has expired
+	 * @param uuid The player's UUID
+	 */
+	public void forgetTag(UUID uuid) {
+		tagStamps.remove(uuid);
+	}
+
+	/**
+	 * Queues a change to the given player's pending punishment for sending
+	 * @param uuid The player's UUID
+	 * @param pending Whether the punishment is pending, false once it has been served
+	 */
+	public void publishPunishment(UUID uuid, boolean pending) {
+		long stamp = nextStamp();
+
+		punishmentStamps.put(uuid, stamp);
+		pendingPunishments.put(uuid, new Delta(TYPE_PUNISHMENT, uuid, stamp, pending ? 1 : 0));
+	}
+
+	/**
+	 * Returns whether players can move between this server and others, so leaving may be a server switch
+	 * @return Whether the transport connects this server to others
+	 */
+	public boolean isNetworked() {
+		return transport.isNetworked();
+	}
+
+	/**
+	 * Queues an announcement that the given player has joined this server
+	 * Cancels any departure recorded for the player, as they either rejoined this server or reached it from another
+	 * @param uuid The player's UUID
+	 */
+	public void publishArrival(UUID uuid) {
+		departures.remove(uuid);
+		pendingArrivals.put(uuid, new Delta(TYPE_ARRIVAL, uuid, nextStamp(), 0));
+	}
+
+	/**
+	 * Records that the given player left this server while tagged
+	 * Their tag is kept, so it follows them if they are switching servers. If no server announces their arrival
+	 * within the switch grace period, they are returned by {@link #expireDepartures(long)}.
+	 * @param uuid The player's UUID
+	 * @param now The current time in milliseconds
+	 */
+	public void recordDeparture(UUID uuid, long now) {
+		Long arrival = arrivals.remove(uuid);
+
+		//Proxies may connect the player to their next server before disconnecting them from this one
+		if(arrival != null && now - arrival <= switchGraceMillis) {
+			return;
+		}
+
+		departures.put(uuid, now + switchGraceMillis);
+	}
+
+	/**
+	 * Removes and returns departed players who have not arrived on any server within the switch grace period
+	 * @param now The current time in milliseconds
+	 * @return The UUIDs of players who left the network while tagged
+	 */
+	public List<UUID> expireDepartures(long now) {
+		arrivals.values().removeIf(time -> now - time > switchGraceMillis);
+
+		if(departures.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		List<UUID> expired = new ArrayList<>();
+
+		departures.entrySet().removeIf(entry -> {
+			if(entry.getValue() > now) {
+				return false;
+			}
+
+			expired.add(entry.getKey());
+			return true;
+		});
+
+		return expired;
+	}
+
+	/**
+	 * Sends all queued changes, in as few messages as the batch size allows
+	 * Changes are kept for the next flush if the transport cannot currently send
+	 */
+	public void flush() {
+		long now = wallClock.getAsLong();
+
+		if(now - lastEviction >= STAMP_RETENTION_MILLIS / 10) {
+			evictStamps(now - STAMP_RETENTION_MILLIS);
+			lastEviction = now;
+		}
+
+		if(pendingToggles.isEmpty() && pendingTags.isEmpty() && pendingArrivals.isEmpty()
+				&& pendingPunishments.isEmpty()) {
+			return;
+		}
+
+		List<Delta> deltas = new ArrayList<>(pendingToggles.size() + pendingTags.size() + pendingArrivals.size()
+													 + pendingPunishments.size());
+		deltas.addAll(pendingToggles.values());
+		deltas.addAll(pendingTags.values());
+		deltas.addAll(pendingArrivals.values());
+		deltas.addAll(pendingPunishments.values());
+
+		for (int i = 0; i < deltas.size(); i += maxBatchSize) {
+			List<Delta> batch = deltas.subList(i, Math.min(deltas.size(), i + maxBatchSize));
+
+			if(!transport.send(encode(batch))) {
+				return;
+			}
+
+			for (Delta delta : batch) {
+				getPending(delta.type()).remove(delta.uuid(), delta);
+			}
+		}
+	}
+
+	/**
+	 * Sends any queued changes and closes the transport
+	 */
+	public void close() {
+		flush();
+		transport.close();
+	}
+
+	private void evictStamps(long cutoff) {
+		toggleStamps.values().removeIf(stamp -> stamp >>> 16 < cutoff);
+		tagStamps.values().removeIf(stamp -> stamp >>> 16 < cutoff);
+		punishmentStamps.values().removeIf(stamp -> stamp >>> 16 < cutoff);
+	}
+
+	private Map<UUID, Delta> getPending(byte type) {
+		return switch(type) {
+			case TYPE_TOGGLE -> pendingToggles;
+			case TYPE_TAG -> pendingTags;
+			case TYPE_PUNISHMENT -> pendingPunishments;
+			default -> pendingArrivals;
+		};
+	}
+
+	private long nextStamp() {
+		//Hybrid logical clock, which follows wall time but never goes backwards or behind remote stamps
+		clock = Math.max(clock + 1, wallClock.getAsLong());
+		return (clock << 16) | (origin & 0xFFFF);
+	}
+
+	private byte[] encode(List<Delta> batch) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + batch.size() * ENTRY_SIZE);
+
+		try(DataOutputStream output = new DataOutputStream(bytes)) {
+			output.writeByte(PROTOCOL_VERSION);
+			output.writeLong(origin);
+			output.writeShort(batch.size());
+
+			for (Delta delta : batch) {
+				output.writeByte(delta.type());
+				output.writeLong(delta.uuid().getMostSignificantBits());
+				output.writeLong(delta.uuid().getLeastSignificantBits());
+				output.writeLong(delta.stamp());
+				output.writeLong(delta.value());
+			}
+		} catch(IOException e) {
+			//Not possible when writing to memory
+			throw new IllegalStateException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	private void receive(byte[] message) {
+		try(DataInputStream input = new DataInputStream(new ByteArrayInputStream(message))) {
+			int version = input.readUnsignedByte();
+
+			if(version != PROTOCOL_VERSION) {
+				logger.warning("Ignoring sync message with unsupported version " + version);
+				return;
+			}
+
+			if(input.readLong() == origin) {
+				return;
+			}
+
+			int count = input.readUnsignedShort();
+			long cutoff = wallClock.getAsLong() - STAMP_RETENTION_MILLIS;
+
+			for (int i = 0; i < count; i++) {
+				byte type = input.readByte();
+				UUID uuid = new UUID(input.readLong(), input.readLong());
+				long stamp = input.readLong();
+				long value = input.readLong();
+
+				clock = Math.max(clock, stamp >>> 16);
+
+				//The stamp this would be compared against may have been forgotten, so it cannot be safely ordered
+				if(stamp >>> 16 < cutoff) {
+					continue;
+				}
+
+				if(type == TYPE_TOGGLE && isNewer(toggleStamps, uuid, stamp)) {
+					pendingToggles.remove(uuid);
+					target.applyToggle(uuid, value != 0);
+				} else if(type == TYPE_TAG && isNewer(tagStamps, uuid, stamp)) {
+					pendingTags.remove(uuid);
+
+					if(value == NO_TAG) {
+						target.clearTag(uuid);
+					} else {
+						target.applyTag(uuid, Instant.ofEpochMilli(value));
+					}
+				} else if(type == TYPE_ARRIVAL && departures.remove(uuid) == null) {
+					arrivals.put(uuid, wallClock.getAsLong());
+				} else if(type == TYPE_PUNISHMENT && isNewer(punishmentStamps, uuid, stamp)) {
+					pendingPunishments.remove(uuid);
+					target.applyPunishment(uuid, value != 0);
+				}
+			}
+		} catch(IOException e) {
+			logger.log(Level.WARNING, "Received malformed sync message", e);
+		}
+	}
+
+	private static boolean isNewer(Map<UUID, Long> stamps, UUID uuid, long stamp) {
+		Long current = stamps.get(uuid);
+
+		if(current != null && current >= stamp) {
+			return false;
+		}
+
+		stamps.put(uuid, stamp);
+		return true;
+	}
+}
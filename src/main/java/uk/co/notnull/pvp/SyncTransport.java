@@ -0,0 +1,34 @@
+package uk.co.notnull.pvp;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries state sync messages between servers
+ * Implementations must deliver received messages to the receiver on the main thread, and must not deliver a
+ * server's own messages back to it.
+ */
+public interface SyncTransport {
+	/**
+	 * Sets the receiver for messages from other servers
+	 * @param receiver The receiver
+	 */
+	void setReceiver(Consumer<byte[]> receiver);
+
+	/**
+	 * Sends a message to all other servers
+	 * @param message The message
+	 * @return Whether the message was sent, false if it should be retried later
+	 */
+	boolean send(byte[] message);
+
+	/**
+	 * Returns whether players can move between this server and the others reached by this transport
+	 * @return Whether this server is part of a network
+	 */
+	boolean isNetworked();
+
+	/**
+	 * Stops receiving messages and releases any resources
+	 */
+	void close();
+}
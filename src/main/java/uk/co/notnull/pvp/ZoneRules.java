@@ -0,0 +1,223 @@
+package uk.co.notnull.pvp;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Compiled set of per-world and per-region PvP rules
+ * Instances are immutable once compiled, and are swapped out as a whole on reload
+ */
+public final class ZoneRules {
+	/**
+	 * Regions covering more chunks than this are not indexed per chunk, and are instead checked on lookups in chunks
+	 * without any smaller regions. Chunks with smaller regions also list any of these regions which overlap them.
+	 */
+	private static final int MAX_INDEXED_CHUNKS = 4096;
+
+	public static final ZoneRules EMPTY = new ZoneRules(Collections.emptyMap());
+
+	private final Map<String, CompiledWorld> worlds;
+
+	public enum ZoneMode {
+		/**
+		 * PvP is decided by the players' own toggle states
+		 */
+		DEFAULT,
+		/**
+		 * PvP is always allowed, regardless of toggle states
+		 */
+		FORCED_ON,
+		/**
+		 * PvP is never allowed, regardless of toggle states
+		 */
+		FORCED_OFF;
+
+		static ZoneMode fromConfig(String value) {
+			return ZoneMode.valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+		}
+	}
+
+	private record Region(String name, ZoneMode mode, int priority,
+						  int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		boolean contains(int x, int y, int z) {
+			return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+		}
+
+		long chunkCount() {
+			return (long) ((maxX >> 4) - (minX >> 4) + 1) * ((maxZ >> 4) - (minZ >> 4) + 1);
+		}
+
+		boolean overlapsChunk(int chunkX, int chunkZ) {
+			return chunkX >= minX >> 4 && chunkX <= maxX >> 4 && chunkZ >= minZ >> 4 && chunkZ <= maxZ >> 4;
+		}
+	}
+
+	private record CompiledWorld(ZoneMode defaultMode, Long2ObjectOpenHashMap<Region[]> chunks, Region[] unindexed) {
+	}
+
+	private ZoneRules(Map<String, CompiledWorld> worlds) {
+		this.worlds = worlds;
+	}
+
+	/**
+	 * Returns the zone mode in effect at the given location
+	 * @param location The location to check
+	 * @return The zone mode
+	 */
+	public ZoneMode getMode(Location location) {
+		World world = location.getWorld();
+
+		if(world == null || worlds.isEmpty()) {
+			return ZoneMode.DEFAULT;
+		}
+
+		return getMode(world.getName(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
+	}
+
+	/**
+	 * Returns the zone mode in effect at the given block position
+	 * @param world The name of the world
+	 * @param x The block x coordinate
+	 * @param y The block y coordinate
+	 * @param z The block z coordinate
+	 * @return The zone mode
+	 */
+	ZoneMode getMode(String world, int x, int y, int z) {
+		CompiledWorld compiled = worlds.get(world);
+		return compiled != null ? getMode(compiled, x, y, z) : ZoneMode.DEFAULT;
+	}
+
+	private static ZoneMode getMode(CompiledWorld compiled, int x, int y, int z) {
+		//Indexed chunks also list overlapping unindexed regions, so either array is in full priority order
+		Region[] regions = compiled.chunks().get(chunkKey(x >> 4, z >> 4));
+
+		for (Region region : regions != null ? regions : compiled.unindexed()) {
+			if(region.contains(x, y, z)) {
+				return region.mode();
+			}
+		}
+
+		return compiled.defaultMode();
+	}
+
+	private static long chunkKey(int chunkX, int chunkZ) {
+		return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Compiles the rules defined in the given config section
+	 * Invalid rules are logged and skipped
+	 * @param section The "zones" config section, may be null
+	 * @param logger Logger for reporting invalid rules
+	 * @return The compiled rules
+	 */
+	public static ZoneRules compile(ConfigurationSection section, Logger logger) {
+		if(section == null) {
+			return EMPTY;
+		}
+
+		Map<String, ZoneMode> worldDefaults = new HashMap<>();
+		Map<String, List<Region>> worldRegions = new HashMap<>();
+		ConfigurationSection worldsSection = section.getConfigurationSection("worlds");
+		ConfigurationSection regionsSection = section.getConfigurationSection("regions");
+
+		if(worldsSection != null) {
+			for (String world : worldsSection.getKeys(false)) {
+				try {
+					worldDefaults.put(world, ZoneMode.fromConfig(worldsSection.getString(world, "default")));
+				} catch(IllegalArgumentException e) {
+					logger.warning("Ignoring invalid mode for world " + world + ": " + worldsSection.getString(world));
+				}
+			}
+		}
+
+		if(regionsSection != null) {
+			for (String name : regionsSection.getKeys(false)) {
+				ConfigurationSection regionSection = regionsSection.getConfigurationSection(name);
+
+				if(regionSection == null) {
+					continue;
+				}
+
+				String world = regionSection.getString("world");
+				List<Integer> min = regionSection.getIntegerList("min");
+				List<Integer> max = regionSection.getIntegerList("max");
+
+				if(world == null || min.size() != 3 || max.size() != 3) {
+					logger.warning("Ignoring region " + name + ": world, min and max [x, y, z] must be set");
+					continue;
+				}
+
+				ZoneMode mode;
+
+				try {
+					mode = ZoneMode.fromConfig(regionSection.getString("mode", "default"));
+				} catch(IllegalArgumentException e) {
+					logger.warning("Ignoring region " + name + ": invalid mode " + regionSection.getString("mode"));
+					continue;
+				}
+
+				worldRegions.computeIfAbsent(world, key -> new ArrayList<>()).add(
+						new Region(name, mode, regionSection.getInt("priority", 0),
+								   Math.min(min.get(0), max.get(0)), Math.min(min.get(1), max.get(1)),
+								   Math.min(min.get(2), max.get(2)), Math.max(min.get(0), max.get(0)),
+								   Math.max(min.get(1), max.get(1)), Math.max(min.get(2), max.get(2))));
+			}
+		}
+
+		Set<String> worldNames = new HashSet<>(worldDefaults.keySet());
+		worldNames.addAll(worldRegions.keySet());
+
+		Map<String, CompiledWorld> worlds = new HashMap<>();
+
+		for (String world : worldNames) {
+			List<Region> regions = worldRegions.getOrDefault(world, Collections.emptyList());
+
+			//Higher priority regions are checked first
+			regions.sort(Comparator.comparingInt(Region::priority).reversed());
+
+			Map<Long, List<Region>> chunks = new HashMap<>();
+			List<Region> unindexed = new ArrayList<>();
+
+			for (Region region : regions) {
+				if(region.chunkCount() > MAX_INDEXED_CHUNKS) {
+					unindexed.add(region);
+					continue;
+				}
+
+				for (int chunkX = region.minX() >> 4; chunkX <= region.maxX() >> 4; chunkX++) {
+					for (int chunkZ = region.minZ() >> 4; chunkZ <= region.maxZ() >> 4; chunkZ++) {
+						chunks.computeIfAbsent(chunkKey(chunkX, chunkZ), key -> new ArrayList<>()).add(region);
+					}
+				}
+			}
+
+			Long2ObjectOpenHashMap<Region[]> chunkIndex = new Long2ObjectOpenHashMap<>(chunks.size());
+
+			chunks.forEach((key, value) -> {
+				int chunkX = (int) (key >> 32), chunkZ = (int) (long) key;
+
+				for (Region region : unindexed) {
+					if(region.overlapsChunk(chunkX, chunkZ)) {
+						value.add(region);
+					}
+				}
+
+				//Stable sort, so equal priorities keep their config order
+				value.sort(Comparator.comparingInt(Region::priority).reversed());
+				chunkIndex.put((long) key, value.toArray(new Region[0]));
+			});
+			chunkIndex.trim();
+
+			worlds.put(world, new CompiledWorld(worldDefaults.getOrDefault(world, ZoneMode.DEFAULT), chunkIndex,
+												unindexed.toArray(new Region[0])));
+		}
+
+		return new ZoneRules(Map.copyOf(worlds));
+	}
+}
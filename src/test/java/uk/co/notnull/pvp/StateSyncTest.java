@@ -0,0 +1,331 @@
+package uk.co.notnull.pvp;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StateSyncTest {
+	private static final long GRACE = 10000;
+
+	/**
+	 * Transport which holds sent messages until the test delivers them, in any order
+	 */
+	private static final class ManualTransport implements SyncTransport {
+		private final List<byte[]> sent = new ArrayList<>();
+		private Consumer<byte[]> receiver = message -> {};
+		private boolean available = true;
+
+		@Override
+		public void setReceiver(Consumer<byte[]> receiver) {
+			this.receiver = receiver;
+		}
+
+		@Override
+		public boolean send(byte[] message) {
+			if(!available) {
+				return false;
+			}
+
+			sent.add(message);
+			return true;
+		}
+
+		@Override
+		public boolean isNetworked() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+
+		void deliver(byte[] message) {
+			receiver.accept(message);
+		}
+	}
+
+	private static final class RecordingTarget implements StateSync.Target {
+		private final Map<UUID, Boolean> toggles = new HashMap<>();
+		private final Map<UUID, Instant> tags = new HashMap<>();
+		private final Map<UUID, Boolean> punishments = new HashMap<>();
+		private int toggleCount = 0;
+		private int clears = 0;
+
+		@Override
+		public void applyToggle(UUID uuid, boolean enabled) {
+			toggles.put(uuid, enabled);
+			toggleCount++;
+		}
+
+		@Override
+		public void applyTag(UUID uuid, Instant time) {
+			tags.put(uuid, time);
+		}
+
+		@Override
+		public void clearTag(UUID uuid) {
+			tags.remove(uuid);
+			clears++;
+		}
+
+		@Override
+		public void applyPunishment(UUID uuid, boolean pending) {
+			punishments.put(uuid, pending);
+		}
+	}
+
+	private final UUID player = UUID.randomUUID();
+	private final Logger logger = Logger.getLogger(StateSyncTest.class.getName());
+	private final Instant tagTime = Instant.ofEpochMilli(1000);
+
+	private RecordingTarget targetA;
+	private RecordingTarget targetB;
+	private StateSync serverA;
+	private StateSync serverB;
+
+	@BeforeEach
+	void setUp() {
+		LoopbackTransport.Network network = new LoopbackTransport.Network();
+
+		targetA = new RecordingTarget();
+		targetB = new RecordingTarget();
+		serverA = new StateSync(network.createTransport(), targetA, 256, GRACE, logger);
+		serverB = new StateSync(network.createTransport(), targetB, 256, GRACE, logger);
+	}
+
+	@Test
+	void tagFollowsPlayerWhoQuitsAndJoinsAnotherServer() {
+		serverA.publishTag(player, tagTime);
+		serverA.flush();
+
+		long now = System.currentTimeMillis();
+
+		//Player leaves server A while tagged, then joins server B
+		serverA.recordDeparture(player, now);
+		serverA.flush();
+		serverB.publishArrival(player);
+		serverB.flush();
+
+		assertEquals(tagTime, targetB.tags.get(player));
+		assertEquals(0, targetB.clears);
+		assertTrue(serverA.expireDepartures(now + GRACE).isEmpty());
+	}
+
+	@Test
+	void joinBeforeQuitIsNotPunished() {
+		serverA.publishTag(player, tagTime);
+		serverA.flush();
+
+		//Proxies may connect the player to server B before disconnecting them from server A
+		serverB.publishArrival(player);
+		serverB.flush();
+
+		long now = System.currentTimeMillis();
+		serverA.recordDeparture(player, now);
+
+		assertEquals(tagTime, targetB.tags.get(player));
+		assertTrue(serverA.expireDepartures(now + GRACE).isEmpty());
+	}
+
+	@Test
+	void quitWithoutJoiningIsPunishedAfterGrace() {
+		serverA.publishTag(player, tagTime);
+		serverA.flush();
+
+		long now = System.currentTimeMillis();
+		serverA.recordDeparture(player, now);
+		serverA.flush();
+
+		assertTrue(serverA.expireDepartures(now + GRACE - 1).isEmpty());
+		assertEquals(List.of(player), serverA.expireDepartures(now + GRACE));
+		assertTrue(serverA.expireDepartures(now + GRACE + 1).isEmpty());
+	}
+
+	@Test
+	void punishmentIsServedByNextServer() {
+		long now = System.currentTimeMillis();
+
+		//Player leaves server A while tagged and does not arrive anywhere within the grace period
+		assertTrue(serverA.isNetworked());
+		serverA.recordDeparture(player, now);
+		assertEquals(List.of(player), serverA.expireDepartures(now + GRACE));
+		serverA.publishPunishment(player, true);
+		serverA.flush();
+
+		assertEquals(Boolean.TRUE, targetB.punishments.get(player));
+
+		//Player later joins server B, which serves the punishment
+		serverB.publishPunishment(player, false);
+		serverB.flush();
+
+		assertEquals(Boolean.FALSE, targetA.punishments.get(player));
+	}
+
+	@Test
+	void rejoiningSameServerCancelsDeparture() {
+		long now = System.currentTimeMillis();
+
+		serverA.recordDeparture(player, now);
+		serverA.publishArrival(player);
+
+		assertTrue(serverA.expireDepartures(now + GRACE).isEmpty());
+	}
+
+	@Test
+	void changesOlderThanRetentionAreIgnored() {
+		AtomicLong time = new AtomicLong(1_000_000_000L);
+		ManualTransport transportA = new ManualTransport();
+		ManualTransport transportB = new ManualTransport();
+		StateSync syncA = new StateSync(transportA, targetA, 256, GRACE, logger, 1, time::get);
+		new StateSync(transportB, targetB, 256, GRACE, logger, 2, time::get);
+
+		syncA.publishToggle(player, true);
+		syncA.flush();
+
+		//Delivered long after it was sent, when the stamp it should be compared against may have been evicted
+		time.addAndGet(600001);
+		transportB.deliver(transportA.sent.get(0));
+
+		assertNull(targetB.toggles.get(player));
+	}
+
+	@Test
+	void outOfOrderDeliveryKeepsNewestChange() {
+		AtomicLong time = new AtomicLong(1_000_000_000L);
+		ManualTransport transportA = new ManualTransport();
+		ManualTransport transportB = new ManualTransport();
+		StateSync syncA = new StateSync(transportA, targetA, 256, GRACE, logger, 1, time::get);
+		new StateSync(transportB, targetB, 256, GRACE, logger, 2, time::get);
+
+		syncA.publishToggle(player, true);
+		syncA.flush();
+		syncA.publishToggle(player, false);
+		syncA.flush();
+
+		transportB.deliver(transportA.sent.get(1));
+		transportB.deliver(transportA.sent.get(0));
+
+		assertEquals(Boolean.FALSE, targetB.toggles.get(player));
+		assertEquals(1, targetB.toggleCount);
+	}
+
+	@Test
+	void duplicateDeliveryIsAppliedOnce() {
+		AtomicLong time = new AtomicLong(1_000_000_000L);
+		ManualTransport transportA = new ManualTransport();
+		ManualTransport transportB = new ManualTransport();
+		StateSync syncA = new StateSync(transportA, targetA, 256, GRACE, logger, 1, time::get);
+		new StateSync(transportB, targetB, 256, GRACE, logger, 2, time::get);
+
+		syncA.publishToggle(player, true);
+		syncA.publishTag(player, tagTime);
+		syncA.flush();
+
+		transportB.deliver(transportA.sent.get(0));
+		targetB.tags.clear();
+		transportB.deliver(transportA.sent.get(0));
+
+		assertEquals(1, targetB.toggleCount);
+		assertTrue(targetB.tags.isEmpty());
+	}
+
+	@Test
+	void concurrentChangesWithEqualClocksConvergeByOrigin() {
+		//Both servers stamp their change in the same millisecond, so the server id breaks the tie
+		AtomicLong time = new AtomicLong(1_000_000_000L);
+		ManualTransport transportA = new ManualTransport();
+		ManualTransport transportB = new ManualTransport();
+		StateSync syncA = new StateSync(transportA, targetA, 256, GRACE, logger, 1, time::get);
+		StateSync syncB = new StateSync(transportB, targetB, 256, GRACE, logger, 2, time::get);
+
+		syncA.publishToggle(player, true);
+		syncB.publishToggle(player, false);
+		syncA.flush();
+		syncB.flush();
+
+		transportA.deliver(transportB.sent.get(0));
+		transportB.deliver(transportA.sent.get(0));
+
+		//Server A adopts B's change, and B keeps its own, so both end up disabled
+		assertEquals(Boolean.FALSE, targetA.toggles.get(player));
+		assertNull(targetB.toggles.get(player));
+	}
+
+	@Test
+	void clockAdvancesPastRemoteStamps() {
+		//Server A's wall clock is behind server B's, so A's next change must still order after B's
+		AtomicLong timeA = new AtomicLong(1_000_000_000L);
+		AtomicLong timeB = new AtomicLong(1_000_005_000L);
+		ManualTransport transportA = new ManualTransport();
+		ManualTransport transportB = new ManualTransport();
+		StateSync syncA = new StateSync(transportA, targetA, 256, GRACE, logger, 2, timeA::get);
+		StateSync syncB = new StateSync(transportB, targetB, 256, GRACE, logger, 1, timeB::get);
+
+		syncB.publishToggle(player, true);
+		syncB.flush();
+		transportA.deliver(transportB.sent.get(0));
+
+		syncA.publishToggle(player, false);
+		syncA.flush();
+		transportB.deliver(transportA.sent.get(0));
+
+		assertEquals(Boolean.TRUE, targetA.toggles.get(player));
+		assertEquals(Boolean.FALSE, targetB.toggles.get(player));
+	}
+
+	@Test
+	void flushSplitsChangesIntoBatches() {
+		AtomicLong time = new AtomicLong(1_000_000_000L);
+		ManualTransport transportA = new ManualTransport();
+		ManualTransport transportB = new ManualTransport();
+		StateSync syncA = new StateSync(transportA, targetA, 2, GRACE, logger, 1, time::get);
+		new StateSync(transportB, targetB, 2, GRACE, logger, 2, time::get);
+
+		for (int i = 0; i < 5; i++) {
+			syncA.publishToggle(UUID.randomUUID(), true);
+		}
+
+		syncA.flush();
+		assertEquals(3, transportA.sent.size());
+
+		for (byte[] message : transportA.sent) {
+			transportB.deliver(message);
+		}
+
+		assertEquals(5, targetB.toggleCount);
+	}
+
+	@Test
+	void unsentChangesAreRetriedOnNextFlush() {
+		AtomicLong time = new AtomicLong(1_000_000_000L);
+		ManualTransport transportA = new ManualTransport();
+		ManualTransport transportB = new ManualTransport();
+		StateSync syncA = new StateSync(transportA, targetA, 256, GRACE, logger, 1, time::get);
+		new StateSync(transportB, targetB, 256, GRACE, logger, 2, time::get);
+
+		transportA.available = false;
+		syncA.publishToggle(player, true);
+		syncA.flush();
+		assertTrue(transportA.sent.isEmpty());
+
+		transportA.available = true;
+		syncA.flush();
+		assertEquals(1, transportA.sent.size());
+
+		transportB.deliver(transportA.sent.get(0));
+		assertEquals(Boolean.TRUE, targetB.toggles.get(player));
+	}
+}
@@ -0,0 +1,67 @@
+package uk.co.notnull.pvp;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ZoneRulesTest {
+	private static ZoneRules compile(String yaml) throws InvalidConfigurationException {
+		YamlConfiguration config = new YamlConfiguration();
+		config.loadFromString(yaml);
+
+		return ZoneRules.compile(config.getConfigurationSection("zones"),
+								 Logger.getLogger(ZoneRulesTest.class.getName()));
+	}
+
+	@Test
+	void largeHighPriorityRegionOverridesSmallLowPriorityRegion() throws InvalidConfigurationException {
+		//The large region covers far more chunks than are indexed, so is stored separately from the small one
+		ZoneRules rules = compile("""
+				zones:
+				  regions:
+				    wilderness:
+				      world: world
+				      min: [-100000, -64, -100000]
+				      max: [100000, 320, 100000]
+				      mode: forced-on
+				      priority: 10
+				    spawn:
+				      world: world
+				      min: [0, -64, 0]
+				      max: [31, 320, 31]
+				      mode: forced-off
+				      priority: 1
+				""");
+
+		assertEquals(ZoneRules.ZoneMode.FORCED_ON, rules.getMode("world", 10, 64, 10));
+		assertEquals(ZoneRules.ZoneMode.FORCED_ON, rules.getMode("world", 500, 64, 500));
+	}
+
+	@Test
+	void smallHighPriorityRegionOverridesLargeLowPriorityRegion() throws InvalidConfigurationException {
+		ZoneRules rules = compile("""
+				zones:
+				  regions:
+				    wilderness:
+				      world: world
+				      min: [-100000, -64, -100000]
+				      max: [100000, 320, 100000]
+				      mode: forced-on
+				      priority: 1
+				    spawn:
+				      world: world
+				      min: [0, -64, 0]
+				      max: [31, 320, 31]
+				      mode: forced-off
+				      priority: 10
+				""");
+
+		assertEquals(ZoneRules.ZoneMode.FORCED_OFF, rules.getMode("world", 10, 64, 10));
+		assertEquals(ZoneRules.ZoneMode.FORCED_ON, rules.getMode("world", 500, 64, 500));
+		assertEquals(ZoneRules.ZoneMode.DEFAULT, rules.getMode("world", 200000, 64, 0));
+	}
+}